@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/** Compares the object codecs on a corpus of files.
+ *  Usage: java gitlet.CodecBenchmark [DIRECTORY]
+ *  Every regular file below DIRECTORY, the gitlet sources by default, is
+ *  written and read back as an object through each codec, in memory so that
+ *  only the codec is measured.  The report shows the total stored size, its
+ *  ratio to the original size, and the best write and read times.
+ *  @author PainJoker
+ */
+public class CodecBenchmark {
+
+    /** Number of times the corpus goes through each codec, the first run being warm-up. */
+    private static final int ROUNDS = 6;
+
+    public static void main(String... args) throws IOException {
+        Path root = new File(args.length > 0 ? args[0] : "../gitlet").toPath();
+        List<byte[]> corpus = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) walk.filter(Files::isRegularFile)::iterator) {
+                corpus.add(Files.readAllBytes(path));
+            }
+        }
+        long original = 0;
+        for (byte[] content : corpus) {
+            original += content.length;
+        }
+
+        System.out.printf("%d files, %d bytes under %s%n", corpus.size(), original, root);
+        System.out.printf("%-10s %14s %8s %12s %12s%n",
+                "codec", "total bytes", "ratio", "write ms", "read ms");
+        for (Codec codec : Codec.ALL) {
+            byte[][] stored = new byte[corpus.size()][];
+            long writeTime = Long.MAX_VALUE;
+            long readTime = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round += 1) {
+                long start = System.nanoTime();
+                for (int i = 0; i < stored.length; i += 1) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    try (OutputStream out = Codec.writer(codec, buffer)) {
+                        out.write(corpus.get(i));
+                    }
+                    stored[i] = buffer.toByteArray();
+                }
+                long middle = System.nanoTime();
+                for (byte[] object : stored) {
+                    try (InputStream in = Codec.reader(new ByteArrayInputStream(object))) {
+                        in.readAllBytes();
+                    }
+                }
+                long end = System.nanoTime();
+                if (round > 0) {
+                    writeTime = Math.min(writeTime, middle - start);
+                    readTime = Math.min(readTime, end - middle);
+                }
+            }
+            long total = 0;
+            for (byte[] object : stored) {
+                total += object.length;
+            }
+            System.out.printf("%-10s %14d %8.3f %12.1f %12.1f%n", codec.getName(), total,
+                    (double) total / original, writeTime / 1e6, readTime / 1e6);
+        }
+    }
+}
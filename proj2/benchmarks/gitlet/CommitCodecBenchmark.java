@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** Compares the Java serialized commit format with CommitCodec over a long history.
+ *  Usage: java gitlet.CommitCodecBenchmark [COMMITS] [FILES]
+ *  Every commit tracks FILES files and changes one of them, as in a history
+ *  walked by log, and the report shows the total stored size and the time
+ *  taken to decode every commit of the history.  Encoded commits refer to
+ *  their files through a tree uid, so their size does not grow with FILES.
+ *  @author PainJoker
+ */
+public class CommitCodecBenchmark {
+
+    /** The fields of a commit as they were persisted through Utils.writeObject. */
+    private static class SerializedCommit implements Serializable {
+        private String message;
+        private String date;
+        private String uid;
+        private String parentUid;
+        private TreeMap<String, String> files;
+        private String secondParentUid;
+    }
+
+    /** Number of times every history is decoded, the first run being warm-up. */
+    private static final int ROUNDS = 6;
+
+    public static void main(String... args) throws IOException, ClassNotFoundException {
+        int commits = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int fileCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        SimpleDateFormat formatter = new SimpleDateFormat("E MMM dd hh:mm:ss yyyy Z");
+
+        byte[][] serialized = new byte[commits][];
+        byte[][] encoded = new byte[commits][];
+        String[] uids = new String[commits];
+        TreeMap<String, String> files = new TreeMap<>();
+        for (int i = 0; i < fileCount; i += 1) {
+            files.put("file" + i + ".txt", sha1("file" + i, "0"));
+        }
+        String parent = Commit.EMPTY_PARENT;
+        for (int i = 0; i < commits; i += 1) {
+            String changed = "file" + (i % fileCount) + ".txt";
+            files.put(changed, sha1(changed, Integer.toString(i)));
+            long timestamp = 1_600_000_000_000L + i * 60_000L;
+            String message = "commit number " + i;
+            Commit commit = new Commit(Commit.EMPTY_PARENT, message, timestamp,
+                    parent, Commit.EMPTY_PARENT, sha1(serialize(files)));
+            encoded[i] = CommitCodec.encode(commit);
+            uids[i] = sha1(encoded[i]);
+
+            SerializedCommit legacy = new SerializedCommit();
+            legacy.message = message;
+            legacy.date = formatter.format(new Date(timestamp));
+            legacy.uid = uids[i];
+            legacy.parentUid = parent;
+            legacy.files = new TreeMap<>(files);
+            legacy.secondParentUid = Commit.EMPTY_PARENT;
+            serialized[i] = serialize(legacy);
+            parent = uids[i];
+        }
+
+        long serializedTime = Long.MAX_VALUE;
+        long encodedTime = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round += 1) {
+            long start = System.nanoTime();
+            for (int i = commits - 1; i >= 0; i -= 1) {
+                try (ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(serialized[i]))) {
+                    SerializedCommit legacy = (SerializedCommit) in.readObject();
+                    legacy.toString();
+                }
+            }
+            long middle = System.nanoTime();
+            for (int i = commits - 1; i >= 0; i -= 1) {
+                CommitCodec.decode(uids[i], encoded[i]).toString();
+            }
+            long end = System.nanoTime();
+            if (round > 0) {
+                serializedTime = Math.min(serializedTime, middle - start);
+                encodedTime = Math.min(encodedTime, end - middle);
+            }
+        }
+
+        System.out.printf("%d commits, %d files each%n", commits, fileCount);
+        System.out.printf("%-14s %14s %14s%n", "format", "total bytes", "decode ms");
+        System.out.printf("%-14s %14d %14.1f%n", "serialized",
+                totalSize(serialized), serializedTime / 1e6);
+        System.out.printf("%-14s %14d %14.1f%n", "CommitCodec",
+                totalSize(encoded), encodedTime / 1e6);
+    }
+
+    private static long totalSize(byte[][] contents) {
+        long total = 0;
+        for (byte[] content : contents) {
+            total += content.length;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,38 @@
+package gitlet;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the JMH benchmarks with the allocation profiler always on.
+ *  Usage: java -jar target/benchmarks.jar [JMH OPTIONS]
+ *  Takes the usual JMH command line, e.g. "-p files=5000 commit" to time only
+ *  commit over repositories of 5000 files.  Next to the time per operation,
+ *  the report shows the bytes allocated per operation and the allocation rate.
+ *  @author PainJoker
+ */
+public class BenchmarkMain {
+
+    public static void main(String... args)
+            throws CommandLineOptionException, IOException, RunnerException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        Runner runner = new Runner(new OptionsBuilder()
+                .parent(options)
+                .addProfiler(GCProfiler.class)
+                .build());
+        if (options.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
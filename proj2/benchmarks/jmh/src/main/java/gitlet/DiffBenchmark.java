@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Times the line matching of Diff on files of a growing number of lines.
+ *  The reversed shape shares every line yet has no common run longer than
+ *  one, the worst case of the middle-snake search, which its cost cap keeps
+ *  near (N + M) * sqrt(N + M).  The edited shape changes one line in fifty,
+ *  as a typical commit does, and is searched to the shortest edit path.
+ *  @author PainJoker
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiffBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int lines;
+
+    @Param({"reversed", "edited"})
+    public String shape;
+
+    private String[] before;
+    private String[] after;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(61);
+        before = new String[lines];
+        after = new String[lines];
+        for (int i = 0; i < lines; i += 1) {
+            before[i] = "line " + i + "\n";
+        }
+        for (int i = 0; i < lines; i += 1) {
+            if (shape.equals("reversed")) {
+                after[i] = before[lines - 1 - i];
+            } else {
+                after[i] = random.nextInt(50) == 0 ? "edited " + i + "\n" : before[i];
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] match() {
+        return Diff.match(before, after);
+    }
+}
@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static gitlet.Utils.*;
+
+/** Times the gitlet commands over a SyntheticRepository, in process.
+ *  Every fork generates its own repository in a temporary directory before
+ *  the first iteration, as gitlet fixes its paths once per JVM.  The commands
+ *  that change the repository are given a fresh change, or undo the previous
+ *  invocation, in an untimed setup, so every invocation does the same work.
+ *  Output of the commands is discarded.
+ *  @author PainJoker
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    /** A generated repository of the shape given by the parameters. */
+    @State(Scope.Benchmark)
+    public static class Synthetic {
+        @Param({"100", "1000"})
+        public int files;
+
+        @Param({"1024"})
+        public int fileSize;
+
+        @Param({"200"})
+        public int commits;
+
+        @Param({"8"})
+        public int branches;
+
+        /** Uids of the commits on master, oldest first. */
+        List<String> history;
+
+        private File dir;
+        private PrintStream console;
+        private int round;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            dir = SyntheticRepository.enterTemporaryDirectory();
+            console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            history = SyntheticRepository.generate(files, fileSize, commits, branches);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            System.setOut(console);
+            SyntheticRepository.delete(dir);
+        }
+
+        /** Change a twentieth of the files, with contents that differ every round. */
+        void edit() {
+            round += 1;
+            for (int i = 0; i < files; i += 20) {
+                writeContents(join(Repository.CWD, SyntheticRepository.fileName(i)),
+                        "round " + round + " of file " + i + "\n");
+            }
+        }
+    }
+
+    /** A repository whose files changed since the last add. */
+    public static class Edited extends Synthetic {
+        @Setup(Level.Invocation)
+        public void change() {
+            edit();
+        }
+    }
+
+    /** A repository whose changes are staged. */
+    public static class Staged extends Synthetic {
+        @Setup(Level.Invocation)
+        public void stage() {
+            edit();
+            Repository.add(List.of("."));
+        }
+    }
+
+    /** A repository back at the head of master before each invocation. */
+    public static class AtHead extends Synthetic {
+        @Setup(Level.Invocation)
+        public void restore() {
+            Repository.reset(history.get(history.size() - 1));
+        }
+    }
+
+    /** A repository switching between two states, one per invocation. */
+    public static class Toggled extends Synthetic {
+        boolean away;
+
+        @TearDown(Level.Invocation)
+        public void toggle() {
+            away = !away;
+        }
+    }
+
+    @Benchmark
+    public void add(Edited repository) {
+        Repository.add(List.of("."));
+    }
+
+    @Benchmark
+    public void commit(Staged repository) {
+        Repository.commit("Benchmark commit");
+    }
+
+    @Benchmark
+    public void log(Synthetic repository) {
+        Repository.log(LogOptions.parse(new String[] {"log"}));
+    }
+
+    /** Log of the commits changing the first generated file. */
+    @Benchmark
+    public void logPath(Synthetic repository) {
+        Repository.log(LogOptions.parse(new String[] {"log", "--",
+            SyntheticRepository.fileName(0)}));
+    }
+
+    @Benchmark
+    public void find(Synthetic repository) {
+        Repository.find(SyntheticRepository.MESSAGE_PREFIX + repository.commits / 2);
+    }
+
+    @Benchmark
+    public void status(Synthetic repository) {
+        Repository.showStatus();
+    }
+
+    /** Switch between master and the branch forked last. */
+    @Benchmark
+    public void checkout(Toggled repository) {
+        Repository.checkoutBranch(repository.away ? "master"
+                : SyntheticRepository.BRANCH_PREFIX + (repository.branches - 1));
+    }
+
+    /** Move master between its head and the middle of its history. */
+    @Benchmark
+    public void reset(Toggled repository) {
+        List<String> history = repository.history;
+        Repository.reset(history.get(repository.away ? history.size() - 1 : history.size() / 2));
+    }
+
+    /** Merge the branch forked first into the head of master. */
+    @Benchmark
+    public void merge(AtHead repository) {
+        Repository.merge(SyntheticRepository.BRANCH_PREFIX + 0);
+    }
+}
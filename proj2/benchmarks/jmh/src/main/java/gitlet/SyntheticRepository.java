@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/** Generates a gitlet repository of a chosen shape to run benchmarks on.
+ *  Usage: java gitlet.SyntheticRepository FILES FILE_SIZE COMMITS BRANCHES
+ *  The repository is made in the current directory, through the Repository
+ *  methods of this JVM.  Its first commit tracks FILES files of FILE_SIZE bytes
+ *  of text lines, and each of the COMMITS - 1 commits after it rewrites a
+ *  twentieth of them on master.  BRANCHES branches fork from master at evenly
+ *  spaced commits and add one file each, in a commit of their own.
+ *  Contents and choices come from a fixed seed, so the same shape always gives
+ *  the same files, though commit uids differ with the time they are made at.
+ *  @author PainJoker
+ */
+public class SyntheticRepository {
+
+    /** Prefix of the message of every generated commit on master. */
+    public static final String MESSAGE_PREFIX = "Rewrite files, step ";
+
+    /** Prefix of the names of the generated branches. */
+    public static final String BRANCH_PREFIX = "topic-";
+
+    private static final String[] WORDS = {
+        "blob", "tree", "commit", "branch", "merge", "stage", "index", "pack",
+        "delta", "graph", "head", "reset", "status", "log", "find", "checkout",
+    };
+
+    private final int fileCount;
+    private final int fileSize;
+    private final Random random = new Random(61);
+    private final List<String> commits = new ArrayList<>();
+
+    private SyntheticRepository(int fileCount, int fileSize) {
+        this.fileCount = fileCount;
+        this.fileSize = fileSize;
+    }
+
+    public static void main(String... args) {
+        if (args.length != 4) {
+            System.out.println("Usage: java gitlet.SyntheticRepository "
+                    + "FILES FILE_SIZE COMMITS BRANCHES");
+            return;
+        }
+        List<String> commits = generate(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        System.out.println("Generated " + commits.size() + " commits on master.");
+    }
+
+    /**
+     * Move the working directory gitlet sees to a new temporary directory.
+     * Must run before any other gitlet class is loaded, as Repository fixes
+     * its paths when it is.
+     * @return the new working directory
+     */
+    public static File enterTemporaryDirectory() {
+        try {
+            File dir = Files.createTempDirectory("gitlet-bench").toFile();
+            System.setProperty("user.dir", dir.getAbsolutePath());
+            return dir;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Delete DIR and everything below it. */
+    public static void delete(File dir) {
+        try (Stream<Path> walk = Files.walk(dir.toPath())) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Initialize a repository in the working directory and fill it with history.
+     * @param fileCount number of files tracked by every commit
+     * @param fileSize size in bytes of every file
+     * @param commitCount number of commits on master, the initial one excluded
+     * @param branchCount number of branches forked from master
+     * @return uids of the commits on master, oldest first
+     */
+    public static List<String> generate(int fileCount, int fileSize, int commitCount,
+                                        int branchCount) {
+        SyntheticRepository repository = new SyntheticRepository(fileCount, fileSize);
+        Repository.init();
+        for (int i = 0; i < fileCount; i += 1) {
+            repository.rewrite(i);
+        }
+        repository.commitAll(MESSAGE_PREFIX + 0);
+        int branch = 0;
+        for (int step = 1; step < commitCount; step += 1) {
+            while (branch < branchCount && branch * commitCount / branchCount < step) {
+                repository.fork(BRANCH_PREFIX + branch);
+                branch += 1;
+            }
+            for (int i = Math.max(1, fileCount / 20); i > 0; i -= 1) {
+                repository.rewrite(repository.random.nextInt(fileCount));
+            }
+            repository.commitAll(MESSAGE_PREFIX + step);
+        }
+        while (branch < branchCount) {
+            repository.fork(BRANCH_PREFIX + branch);
+            branch += 1;
+        }
+        return repository.commits;
+    }
+
+    /** @return name of the Ith generated file. */
+    public static String fileName(int i) {
+        return String.format("file%05d.txt", i);
+    }
+
+    /** Fill the Ith file with new lines of text. */
+    private void rewrite(int i) {
+        writeContents(join(Repository.CWD, fileName(i)), text(fileSize));
+    }
+
+    /** @return SIZE bytes of random text lines. */
+    private String text(int size) {
+        StringBuilder text = new StringBuilder(size);
+        while (text.length() < size) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        text.setLength(size);
+        return text.toString();
+    }
+
+    private void commitAll(String message) {
+        Repository.add(List.of("."));
+        Repository.commit(message);
+        commits.add(BranchManager.getHeadCommitUid());
+    }
+
+    /** Create BRANCH at the head of master and give it a commit adding one file. */
+    private void fork(String branch) {
+        Repository.attachBranch(branch);
+        Repository.checkoutBranch(branch);
+        writeContents(join(Repository.CWD, branch + ".txt"), text(fileSize));
+        Repository.add(List.of(branch + ".txt"));
+        Repository.commit("Add " + branch);
+        Repository.checkoutBranch("master");
+    }
+}
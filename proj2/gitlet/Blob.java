@@ -1,33 +1,29 @@
 package gitlet;
 
-import java.io.File;
-import java.io.Serializable;
-
-import static gitlet.Repository.*;
-import static gitlet.Utils.*;
-
 /** Represents a file tracker.
+ *  Only the name and SHA-1 of the file are kept in memory, the content
+ *  itself is streamed through BlobStore when it is needed.
  *
  *  @author PainJoker
  */
-public class Blob implements Serializable {
+public class Blob {
     private final String fileName;
-    private final String content;
     private final String uid;
 
+    /** Track the working copy of FILENAME, hashed through the StatCache. */
     public Blob(String fileName) {
         this.fileName = fileName;
-        File filePath = join(CWD, fileName);
-        content = readContentsAsString(filePath);
-        uid = sha1(fileName, content);
+        uid = StatCache.hash(fileName);
     }
 
-    public String getFileName() {
-        return fileName;
+    /** Track FILENAME whose content is already stored under UID. */
+    public Blob(String fileName, String uid) {
+        this.fileName = fileName;
+        this.uid = uid;
     }
 
-    public String getContent() {
-        return content;
+    public String getFileName() {
+        return fileName;
     }
 
     public String getUid() {
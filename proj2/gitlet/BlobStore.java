@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static gitlet.Repository.BLOBS_DIR;
+import static gitlet.Repository.STAGED_DIR;
+import static gitlet.Utils.*;
+
+/**
+ * Content-addressed storage of file contents.
+ * Each loose object is the content of a file compressed by the configured Codec,
+ * named by the blob uid, until it is folded into the pack by PackWriter.
+ * Contents are streamed in fixed size chunks and never held in memory as a whole.
+ *
+ * @author PainJoker
+ */
+public class BlobStore {
+    /** Size of the buffers used while streaming file content. */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /** Setting holding the format of the blob uids. */
+    public static final String FORMAT = "core.format";
+    /** Format whose blob uids hash the file name along with the content. */
+    public static final int NAMED_FORMAT = 1;
+    /** Format whose blob uids hash the content alone, the one of new repositories. */
+    public static final int CONTENT_FORMAT = 2;
+
+    /** @return the format of the blob uids of this repository. */
+    public static int format() {
+        return Integer.parseInt(Config.get(FORMAT, Integer.toString(NAMED_FORMAT)));
+    }
+
+    /**
+     * Compute the uid of a blob without loading its content, equal to
+     * sha1(content), or sha1(fileName, content) in repositories of NAMED_FORMAT.
+     * @param fileName name the content is tracked under
+     * @param file the file holding the content
+     * @return hex SHA-1 uid
+     */
+    public static String hash(String fileName, File file) {
+        MessageDigest md = newDigest();
+        if (format() < CONTENT_FORMAT) {
+            md.update(fileName.getBytes(StandardCharsets.UTF_8));
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Compute the CONTENT_FORMAT uid of the stored or staged blob UID,
+     * streaming its content.
+     * @param uid blob uid, in any format
+     * @return hex SHA-1 of the content alone
+     */
+    public static String contentHash(String uid) {
+        MessageDigest md = newDigest();
+        try (InputStream in = open(uid)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /**
+     * Compress the content of SOURCE into the object file TARGET,
+     * with the codec configured for the repository.
+     * @param source working file
+     * @param target object file, created or overwritten
+     */
+    public static void write(File source, File target) {
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            write(in, target);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Compress the content read from IN into the object file TARGET,
+     * with the codec configured for the repository.
+     * @param in content, read to its end but not closed
+     * @param target object file, created or overwritten
+     */
+    public static void write(InputStream in, File target) {
+        File temp = FileUtils.tempFileFor(target);
+        try (OutputStream out = Codec.writer(Codec.configured(), new BufferedOutputStream(
+                     Files.newOutputStream(temp.toPath()), CHUNK_SIZE))) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            temp.delete();
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        FileUtils.moveAtomic(temp, target);
+    }
+
+    /** @return true if blob UID is stored, either loose or packed. */
+    public static boolean contains(String uid) {
+        return join(BLOBS_DIR, uid).exists() || PackReader.contains(uid);
+    }
+
+    /**
+     * Open the stored or staged content of blob UID.
+     * @param uid blob uid
+     * @return decompressing stream, must be closed by the caller
+     */
+    public static InputStream open(String uid) {
+        File loose = join(BLOBS_DIR, uid);
+        if (!loose.exists()) {
+            loose = join(STAGED_DIR, uid);
+        }
+        if (!loose.exists()) {
+            byte[] packed = PackReader.read(uid);
+            if (packed == null) {
+                throw new IllegalArgumentException("Missing blob " + uid);
+            }
+            return new ByteArrayInputStream(packed);
+        }
+        try {
+            return Codec.reader(new BufferedInputStream(
+                    Files.newInputStream(loose.toPath()), CHUNK_SIZE));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** @return the whole stored content of blob UID. */
+    public static byte[] readContents(String uid) {
+        try (InputStream in = open(uid)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Write the stored content of blob UID to TARGET.
+     * @param uid blob uid
+     * @param target working file, created or overwritten
+     */
+    public static void release(String uid, File target) {
+        try (InputStream in = open(uid)) {
+            Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+}
@@ -1,27 +1,80 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static gitlet.Commit.getCommit;
+import static gitlet.Repository.BRANCH_FILE;
 import static gitlet.Repository.HEAD_FILE;
+import static gitlet.Repository.PACKED_REFS_FILE;
 import static gitlet.Repository.REF_DIR;
-import static gitlet.Repository.BRANCH_FILE;
+import static gitlet.Repository.REF_LOG_FILE;
 import static gitlet.Utils.*;
 
 /**
  * Handle the operation about branch.
+ * Every branch and the commit it points to is kept in PACKED_REFS_FILE as
+ *     UID NAME
+ * lines, as of its last compaction, and every later change is appended to
+ * REF_LOG_FILE as a "UID NAME" line, or "delete NAME" for a removal.
+ * Both are read once per process into a hash table, so looking up, moving,
+ * adding or removing a branch takes the same time however many there are.
+ * Once the log holds more records than there are branches, the table is
+ * written as a new packed file and the log starts over.
+ * Both files start with a "# generation G" line: every compaction writes the
+ * packed file with the next generation, and a log belongs to the packed file
+ * of its generation. Readers take no lock, so a compaction may run between
+ * their reads of the two files; they read the packed file, then the log, then
+ * the generation of the packed file again, and start over if it changed.
+ * A log of an older generation, left by a crash during a compaction, holds
+ * nothing the packed file lacks and is ignored until the next change
+ * starts a new one.
+ * Repositories made before packed refs, with the branch set in BRANCH_FILE
+ * and one file per branch in REF_DIR, are read as such and converted by the
+ * first change of a branch.
+ * HEAD is read once and written through.
  *
  * @author PainJoker
  */
 public class BranchManager {
-    private static TreeSet<String> branches;
+    private static final String DELETE = "delete";
+    private static final String GENERATION = "# generation ";
+
+    /** Number of log records below which the log is never compacted. */
+    private static final int MIN_COMPACTION = 64;
+
+    private static HashMap<String, String> refs;
+    private static String head;
+
+    /** Generation of PACKED_REFS_FILE as of the last read or compaction. */
+    private static long generation;
+
+    /** Number of records in REF_LOG_FILE. */
+    private static int logRecords;
+
+    /**
+     * Whether REF_LOG_FILE must be started over, as it ends with a partial
+     * record or belongs to an older packed file, both left by a crash.
+     */
+    private static boolean staleLog;
 
     public static void setBranches() {
-        branches = new TreeSet<>();
-        branches.add("master");
-        writeObject(BRANCH_FILE, branches);
-        writeContents(HEAD_FILE, "master");
+        refs = new HashMap<>();
+        generation = 0;
+        compact();
+        checkout("master");
     }
 
     /**
@@ -29,21 +82,22 @@ public class BranchManager {
      * @param commitUid String
      */
     public static void moveBranch(String commitUid) {
-        String branchName = getHeadBranch();
-        writeContents(join(REF_DIR, branchName), commitUid);
+        moveBranch(getHeadBranch(), commitUid);
     }
 
     /**
-     * checkout branch [branch name] call back func.
+     * Point the branch BRANCHNAME to COMMITUID, creating the branch if needed.
      * @param branchName added branch name
      * @param commitUid where branch points.
      */
     public static void moveBranch(String branchName, String commitUid) {
-        writeContents(join(REF_DIR, branchName), commitUid);
+        refs().put(branchName, commitUid);
+        record(commitUid + " " + branchName);
     }
 
+    /** @return the names of every branch, sorted. */
     public static TreeSet<String> getBranches() {
-        return readObject(BRANCH_FILE, TreeSet.class);
+        return new TreeSet<>(refs().keySet());
     }
 
     /**
@@ -51,7 +105,10 @@ public class BranchManager {
      * @return String represented branch
      */
     public static String getHeadBranch() {
-        return readContentsAsString(HEAD_FILE);
+        if (head == null) {
+            head = readContentsAsString(HEAD_FILE);
+        }
+        return head;
     }
 
     /**
@@ -87,29 +144,25 @@ public class BranchManager {
      * @return CommitUid
      */
     public static String getCommitUid(String branch) {
-        File branchFile = join(REF_DIR, branch);
-        return readContentsAsString(branchFile);
+        String uid = refs().get(branch);
+        if (uid == null) {
+            throw new IllegalArgumentException("No branch " + branch);
+        }
+        return uid;
     }
 
     public static void createBranch(String branchName) {
-        addBranch(branchName);
-
-        String currentCommitUid = getHeadCommitUid();
-        moveBranch(branchName, currentCommitUid);
+        moveBranch(branchName, getHeadCommitUid());
     }
 
     public static void deleteBranch(String branchName) {
-        removeBranch(branchName);
-        File branchFile = join(REF_DIR, branchName);
-        if (!branchFile.delete()) {
-            throw new RuntimeException("Failed to delete branch " + branchName);
-        }
+        refs().remove(branchName);
+        record(DELETE + " " + branchName);
     }
 
     public static void showBranches() {
-        branches = getBranches();
         System.out.println("=== Branches ===");
-        for (String branch : branches) {
+        for (String branch : getBranches()) {
             if (branch.equals(getHeadBranch())) {
                 System.out.println("*" + branch);
             } else {
@@ -120,23 +173,150 @@ public class BranchManager {
     }
 
     public static boolean containsBranch(String branchName) {
-        branches = getBranches();
-        return branches.contains(branchName);
+        return refs().containsKey(branchName);
     }
 
-    private static void removeBranch(String branchName) {
-        branches = getBranches();
-        branches.remove(branchName);
-        writeObject(BRANCH_FILE, branches);
+    public static void checkout(String branchName) {
+        FileUtils.writeLocked(HEAD_FILE, branchName);
+        head = branchName;
     }
 
-    private static void addBranch(String branchName) {
-        branches = getBranches();
-        branches.add(branchName);
-        writeObject(BRANCH_FILE, branches);
+    /** Drop the branch table and HEAD, so that the next access reads them again. */
+    static void forget() {
+        refs = null;
+        head = null;
     }
 
-    public static void checkout(String branchName) {
-        writeContents(HEAD_FILE, branchName);
+    /** @return the branch table, read on first use. */
+    private static HashMap<String, String> refs() {
+        if (refs != null) {
+            return refs;
+        }
+        refs = new HashMap<>();
+        if (!PACKED_REFS_FILE.exists() && BRANCH_FILE.exists()) {
+            generation = 0;
+            readLegacyRefs();
+            return refs;
+        }
+        String packed;
+        String log;
+        do {
+            packed = readRecords(PACKED_REFS_FILE);
+            log = readRecords(REF_LOG_FILE);
+            generation = generationOf(packed);
+        } while (generationOf(readRecords(PACKED_REFS_FILE)) != generation
+                || generationOf(log) > generation);
+        for (String line : packed.split("\n")) {
+            apply(line);
+        }
+        int end = log.lastIndexOf('\n') + 1;
+        boolean older = end > 0 && generationOf(log) < generation;
+        staleLog = older || end < log.length();
+        logRecords = 0;
+        if (end > 0 && !older) {
+            for (String line : log.substring(0, end).split("\n")) {
+                if (apply(line)) {
+                    logRecords += 1;
+                }
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * @return the generation on the first line of the packed file or log CONTENTS,
+     *         0 for one written before generations, or empty
+     */
+    private static long generationOf(String contents) {
+        int end = contents.indexOf('\n');
+        if (!contents.startsWith(GENERATION) || end < 0) {
+            return 0;
+        }
+        return Long.parseLong(contents.substring(GENERATION.length(), end));
+    }
+
+    /** Apply the line RECORD to the table. @return false if it is no record */
+    private static boolean apply(String record) {
+        if (record.startsWith(GENERATION)) {
+            return false;
+        } else if (record.startsWith(DELETE + " ")) {
+            refs.remove(record.substring(DELETE.length() + 1));
+        } else if (record.length() > UID_LENGTH) {
+            refs.put(record.substring(UID_LENGTH + 1), record.substring(0, UID_LENGTH));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /** Make the change RECORD, already applied to the table, durable. */
+    private static void record(String record) {
+        if (!PACKED_REFS_FILE.exists() || staleLog
+                || logRecords >= Math.max(MIN_COMPACTION, refs.size())) {
+            compact();
+            return;
+        }
+        String header = REF_LOG_FILE.exists() ? "" : GENERATION + generation + "\n";
+        FileUtils.append(REF_LOG_FILE, header + record + "\n");
+        logRecords += 1;
+    }
+
+    /** Write the table as the packed file and start a new log. */
+    private static void compact() {
+        generation += 1;
+        StringBuilder packed = new StringBuilder(GENERATION + generation + "\n");
+        for (Map.Entry<String, String> ref : new TreeMap<>(refs).entrySet()) {
+            packed.append(ref.getValue()).append(" ").append(ref.getKey()).append("\n");
+        }
+        FileUtils.writeAtomic(PACKED_REFS_FILE, packed.toString());
+        FileUtils.sync();
+        REF_LOG_FILE.delete();
+        logRecords = 0;
+        staleLog = false;
+        if (BRANCH_FILE.exists()) {
+            deleteLegacyRefs();
+        }
+    }
+
+    /** Fill the table from BRANCH_FILE and the file of every branch. */
+    @SuppressWarnings("unchecked")
+    private static void readLegacyRefs() {
+        for (String branch : (TreeSet<String>) readObject(BRANCH_FILE, TreeSet.class)) {
+            File ref = join(REF_DIR, branch);
+            if (ref.exists()) {
+                refs.put(branch, readContentsAsString(ref));
+            }
+        }
+    }
+
+    /**
+     * Delete every file and directory of REF_DIR but the packed file and the log,
+     * BRANCH_FILE last so that an interrupted cleanup is resumed.
+     */
+    private static void deleteLegacyRefs() {
+        List<Path> legacy;
+        try (Stream<Path> walk = Files.walk(REF_DIR.toPath())) {
+            legacy = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        for (Path path : legacy) {
+            if (!path.equals(REF_DIR.toPath()) && !path.equals(PACKED_REFS_FILE.toPath())
+                    && !path.equals(REF_LOG_FILE.toPath()) && !path.equals(BRANCH_FILE.toPath())) {
+                path.toFile().delete();
+            }
+        }
+        BRANCH_FILE.delete();
+    }
+
+    /** @return the content of FILE, or "" if there is no such file. */
+    private static String readRecords(File file) {
+        try {
+            return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return "";
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 }
@@ -1,20 +1,20 @@
 package gitlet;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.Objects;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import static gitlet.Repository.CWD;
 import static gitlet.Repository.REMOVED_FILE;
 import static gitlet.Repository.STAGED_FILE;
 import static gitlet.Repository.STAGED_DIR;
 import static gitlet.Repository.BLOBS_DIR;
 import static gitlet.Utils.*;
-import static java.nio.file.Files.move;
 
 /**
  * Handle the stage and remove area logic.
+ * Both tracks are read once and every change is written through to disk.
  *
  * @author PainJoker
  */
@@ -25,23 +25,49 @@ public class BufferManager {
     public static void setBuffer() {
         staged = new TreeMap<>();
         removed = new TreeSet<>();
-        writeObject(STAGED_FILE, staged);
-        writeObject(REMOVED_FILE, removed);
+        FileUtils.writeObjectAtomic(STAGED_FILE, staged);
+        FileUtils.writeObjectAtomic(REMOVED_FILE, removed);
+    }
+
+    /** Drop both tracks, so that the next access reads them again. */
+    static void forget() {
+        staged = null;
+        removed = null;
     }
 
     /** Clear the Staging files of stage area. */
     public static void clearStageTrack() {
         staged = new TreeMap<>();
-        writeObject(STAGED_FILE, staged);
+        FileUtils.writeObjectAtomic(STAGED_FILE, staged);
+    }
+
+    /** Replace both the staged and the removed tracks. */
+    public static void setArea(TreeMap<String, String> newStaged, TreeSet<String> newRemoved) {
+        staged = newStaged;
+        removed = newRemoved;
+        FileUtils.writeObjectAtomic(STAGED_FILE, staged);
+        FileUtils.writeObjectAtomic(REMOVED_FILE, removed);
     }
 
-    /** Unstage the blob. */
-    public static void unstage(Blob blob) {
-        File stagedBlob = new File(STAGED_DIR, blob.getFileName());
-        if (!stagedBlob.delete()) {
-            throw new RuntimeException();
+    /** Delete the staged content UID, if it was written. */
+    public static void dropStaged(String uid) {
+        File stagedBlob = join(STAGED_DIR, uid);
+        if (stagedBlob.exists() && !stagedBlob.delete()) {
+            throw new RuntimeException("Failed to unstage " + uid);
+        }
+    }
+
+    /**
+     * Unstage the file, dropping its staged content if any was written
+     * and no other staged file shares it.
+     */
+    public static void unstage(String fileName) {
+        staged = getStaged();
+        String uid = staged.remove(fileName);
+        if (!staged.containsValue(uid)) {
+            dropStaged(uid);
         }
-        removeStage(blob);
+        FileUtils.writeObjectAtomic(STAGED_FILE, staged);
     }
 
     /** Check stage area whether is empty. */
@@ -56,83 +82,44 @@ public class BufferManager {
      * @return stage mapping between file name and corresponding SHA-1
      */
     public static TreeMap<String, String> getStaged() {
-        return readObject(STAGED_FILE, TreeMap.class);
-    }
-
-    /**
-     * Check whether staged File through its file name.
-     * @return true if it is staged.
-     */
-    public static boolean stagedContainsFile(Blob blob) {
-        staged = readObject(STAGED_FILE, TreeMap.class);
-        return staged.containsKey(blob.getFileName());
-    }
-
-    /**
-     * check if this particular file is removed.
-     * @return true if is removed.
-     */
-    public static boolean removedContainsFile(Blob blob) {
-        removed = readObject(REMOVED_FILE, TreeSet.class);
-        return removed.contains(blob.getFileName());
-    }
-
-    /**
-     * Staging an already-staged file overwrites the previous entry
-     * in the staging area with the new contents.
-     * @param blob The content of file need to be added.
-     */
-    public static void stageWithOverride(Blob blob) {
-        staged = readObject(STAGED_FILE, TreeMap.class);
-        if (stagedContainsFile(blob)) {
-            unstage(blob);
+        if (staged == null) {
+            staged = readObject(STAGED_FILE, TreeMap.class);
         }
-        stage(blob);
-        addStage(blob);
-    }
-
-    /** Write blob into STAGE_DIR. */
-    private static void stage(Blob blob) {
-        File stagedFile = join(STAGED_DIR, blob.getFileName());
-        writeObject(stagedFile, blob);
+        return new TreeMap<>(staged);
     }
 
-    /** Lose track of blob */
-    private static void removeStage(Blob blob) {
-        staged = readObject(STAGED_FILE, TreeMap.class);
-        staged.remove(blob.getFileName());
-        writeObject(STAGED_FILE, staged);
+    /** Write the content of blob into STAGE_DIR. */
+    public static void stage(Blob blob) {
+        File stagedFile = join(STAGED_DIR, blob.getUid());
+        BlobStore.write(join(CWD, blob.getFileName()), stagedFile);
     }
 
     /** add track of blob. */
     public static void addStage(Blob blob) {
-        staged = readObject(STAGED_FILE, TreeMap.class);
+        staged = getStaged();
         staged.put(blob.getFileName(), blob.getUid());
-        writeObject(STAGED_FILE, staged);
+        FileUtils.writeObjectAtomic(STAGED_FILE, staged);
     }
 
+    /** Move the staged contents into the object store, keeping the stage tracks. */
     public static void storeTrackedFiles() {
         for (String file : Objects.requireNonNull(plainFilenamesIn(STAGED_DIR))) {
-            File blobFile = join(STAGED_DIR, file);
-            Blob blob = readObject(blobFile, Blob.class);
-            try {
-                move(blobFile.toPath(), new File(BLOBS_DIR, blob.getUid()).toPath());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            FileUtils.moveAtomic(join(STAGED_DIR, file), join(BLOBS_DIR, file));
         }
-        clearArea();
     }
 
     /** track removed blobs. */
     public static void addRemove(String fileName) {
-        removed = readObject(REMOVED_FILE, TreeSet.class);
+        removed = getRemoved();
         removed.add(fileName);
-        writeObject(REMOVED_FILE, removed);
+        FileUtils.writeObjectAtomic(REMOVED_FILE, removed);
     }
 
     public static TreeSet<String> getRemoved() {
-        return readObject(REMOVED_FILE, TreeSet.class);
+        if (removed == null) {
+            removed = readObject(REMOVED_FILE, TreeSet.class);
+        }
+        return new TreeSet<>(removed);
     }
 
     public static void showFiles() {
@@ -174,12 +161,6 @@ public class BufferManager {
 
     private static void clearRemoveTrack() {
         removed = new TreeSet<>();
-        writeObject(REMOVED_FILE, removed);
-    }
-
-    public static void popRemoved(Blob blob) {
-        removed = getRemoved();
-        removed.remove(blob.getFileName());
-        writeObject(REMOVED_FILE, removed);
+        FileUtils.writeObjectAtomic(REMOVED_FILE, removed);
     }
 }
@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Repository.BLOBS_DIR;
+import static gitlet.Repository.TREES_DIR;
+import static gitlet.Utils.*;
+
+/**
+ * The objects one repository sends another in a single stream.
+ * Only the commits the receiver lacks, as told by the commits it has, are sent,
+ * along with the trees and blobs they add over their parents the receiver holds.
+ * The stream is compressed by the fast Codec and holds BUNDLE_MAGIC followed by
+ *     type(1) uid(20) length(4) content
+ * for every object and a final zero type. Blobs come first, then trees, then
+ * commits parents first, so a commit is only stored once all it refers to is.
+ *
+ * @author PainJoker
+ */
+public class Bundle {
+    private static final int BUNDLE_MAGIC = 0x47424431;
+    private static final int END = 0;
+
+    /**
+     * Write to OUT, then close it, the objects needed to have WANT by a repository
+     * holding HAVES.
+     * @param haves uids of the commits the receiver holds, with their history
+     * @return number of commits sent
+     */
+    public static int write(OutputStream out, String want, Collection<String> haves)
+            throws IOException {
+        List<String> commits = CommitGraph.missing(want, haves);
+        Set<String> missing = new HashSet<>(commits);
+        Set<String> trees = new HashSet<>();
+        Set<String> blobs = new HashSet<>();
+        for (String uid : commits) {
+            Commit commit = Commit.getCommit(uid);
+            for (String parent : new String[] {commit.getParentUid(),
+                                               commit.getSecondParentUid()}) {
+                if (!parent.equals(Commit.EMPTY_PARENT) && !missing.contains(parent)) {
+                    Tree.collect(Commit.getCommit(parent).getTreeUid(), trees, blobs);
+                }
+            }
+        }
+        Set<String> hadTrees = new HashSet<>(trees);
+        Set<String> hadBlobs = new HashSet<>(blobs);
+        for (String uid : commits) {
+            Tree.collect(Commit.getCommit(uid).getTreeUid(), trees, blobs);
+        }
+        trees.removeAll(hadTrees);
+        blobs.removeAll(hadBlobs);
+
+        DataOutputStream data = new DataOutputStream(Codec.writer(Codec.FAST, out));
+        data.writeInt(BUNDLE_MAGIC);
+        for (String uid : blobs) {
+            writeEntry(data, PackReader.BLOB, uid, BlobStore.readContents(uid));
+        }
+        for (String uid : trees) {
+            writeEntry(data, PackReader.TREE, uid, Tree.readContents(uid));
+        }
+        for (String uid : commits) {
+            writeEntry(data, PackReader.COMMIT, uid, Commit.readContents(uid));
+        }
+        data.writeByte(END);
+        data.close();
+        return commits.size();
+    }
+
+    /**
+     * Store every object of the bundle read from IN, skipping those already stored.
+     * Trees, commits and, in BlobStore.CONTENT_FORMAT, blobs are checked against
+     * their uids.
+     * @return number of commits received
+     */
+    public static int read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(Codec.reader(in));
+        if (data.readInt() != BUNDLE_MAGIC) {
+            throw new IllegalArgumentException("Not a gitlet bundle.");
+        }
+        int commits = 0;
+        byte[] raw = new byte[UID_LENGTH / 2];
+        for (int type = data.readByte(); type != END; type = data.readByte()) {
+            data.readFully(raw);
+            String uid = toHex(raw);
+            byte[] content = new byte[data.readInt()];
+            data.readFully(content);
+            if (type == PackReader.BLOB) {
+                if (BlobStore.format() >= BlobStore.CONTENT_FORMAT) {
+                    checkUid(uid, content);
+                }
+                if (!BlobStore.contains(uid)) {
+                    BlobStore.write(new ByteArrayInputStream(content), join(BLOBS_DIR, uid));
+                }
+            } else if (type == PackReader.TREE) {
+                checkUid(uid, content);
+                File loose = join(TREES_DIR, uid);
+                if (!loose.exists() && !PackReader.contains(uid)) {
+                    FileUtils.writeAtomic(loose, (Object) content);
+                }
+            } else if (type == PackReader.COMMIT) {
+                checkUid(uid, content);
+                if (CommitIndex.contains(uid)) {
+                    continue;
+                }
+                Commit commit = CommitCodec.decode(uid, content);
+                for (String parent : new String[] {commit.getParentUid(),
+                                                   commit.getSecondParentUid()}) {
+                    if (!parent.equals(Commit.EMPTY_PARENT) && !CommitIndex.contains(parent)) {
+                        throw new IllegalArgumentException("Bundle lacks parent " + parent);
+                    }
+                }
+                commit.store();
+                commits += 1;
+            } else {
+                throw new IllegalArgumentException("Unknown bundle entry " + type);
+            }
+        }
+        return commits;
+    }
+
+    private static void writeEntry(DataOutputStream data, int type, String uid, byte[] content)
+            throws IOException {
+        data.writeByte(type);
+        data.write(fromHex(uid));
+        data.writeInt(content.length);
+        data.write(content);
+    }
+
+    private static void checkUid(String uid, byte[] content) {
+        if (!sha1(content).equals(uid)) {
+            throw new IllegalArgumentException("Corrupt bundle entry " + uid);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import static gitlet.Repository.CHANGED_PATHS_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * A Bloom filter per commit of the paths it changes from its first parent,
+ * kept in CHANGED_PATHS_FILE beside the commit graph, so that a walk limited
+ * to one path skips the commits that did not touch it without reading them.
+ * The file starts with MAGIC and VERSION, followed by one entry per commit
+ * in the order of the commit graph:
+ *     length(4) filter(length)
+ * Every changed file and the directories holding it are added to the filter,
+ * with BITS_PER_PATH bits per path and HASHES bit positions per path derived
+ * from one 64-bit FNV-1a hash. A commit changing more than MAX_PATHS paths
+ * gets an empty filter, which matches every path. Commits past the last entry,
+ * as in a repository older than the file, match every path as well; the file
+ * is written anew whenever the commit graph is.
+ *
+ * @author PainJoker
+ */
+public class ChangedPaths {
+    private static final int MAGIC = 0x43504631;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int BITS_PER_PATH = 10;
+    private static final int HASHES = 7;
+    private static final int MIN_FILTER_SIZE = 8;
+    private static final int MAX_PATHS = 512;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static int count = -1;
+    private static byte[] filters;
+    private static int[] offsets;
+
+    /** Whether CHANGED_PATHS_FILE ends with a partial entry, left by a crash. */
+    private static boolean torn;
+
+    /**
+     * Tell whether the commit at POSITION of the commit graph changes PATH from
+     * its first parent. The trees are only compared if the filter of the commit
+     * cannot rule PATH out.
+     * @param path path of a file or directory, levels separated by Tree.SEPARATOR
+     */
+    public static boolean touches(int position, String path) {
+        if (!mightTouch(position, path)) {
+            return false;
+        }
+        String entry = Tree.find(treeAt(position), path);
+        int parent = CommitGraph.parentOf(position);
+        if (parent < 0) {
+            return entry != null;
+        }
+        return !Objects.equals(entry, Tree.find(treeAt(parent), path));
+    }
+
+    /**
+     * Record the filter of COMMIT, just added at POSITION of the commit graph,
+     * writing every missing one if the file lags behind the graph.
+     */
+    static void add(Commit commit, int position) {
+        load();
+        if (torn || count != position) {
+            rebuild(position);
+        }
+        boolean fresh = !CHANGED_PATHS_FILE.exists();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(CHANGED_PATHS_FILE, true)))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            append(out, filterOf(CommitGraph.parentOf(position), commit.getTreeUid()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.markUnsynced(CHANGED_PATHS_FILE);
+    }
+
+    /**
+     * Drop the filters, before the commit graph is written in another order.
+     * Until rebuild runs, every commit matches every path.
+     */
+    static void invalidate() {
+        CHANGED_PATHS_FILE.delete();
+        count = 0;
+        filters = new byte[0];
+        offsets = new int[] {0};
+        torn = false;
+    }
+
+    /** Drop the filters read, so that the next access reads the file again. */
+    static void forget() {
+        count = -1;
+    }
+
+    /** Recreate the filter of every commit of the graph. */
+    static void rebuild() {
+        rebuild(CommitGraph.size());
+    }
+
+    /** Recreate the filters of the first SIZE commits of the graph. */
+    private static void rebuild(int size) {
+        invalidate();
+        File temp = FileUtils.tempFileFor(CHANGED_PATHS_FILE);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < size; i += 1) {
+                append(out, filterOf(CommitGraph.parentOf(i), treeAt(i)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.moveAtomic(temp, CHANGED_PATHS_FILE);
+    }
+
+    /** @return false if the filter of commit POSITION rules PATH and its directories out. */
+    private static boolean mightTouch(int position, String path) {
+        load();
+        if (position >= count || offsets[position] == offsets[position + 1]) {
+            return true;
+        }
+        int start = offsets[position];
+        int bits = 8 * (offsets[position + 1] - start);
+        for (int end = path.length(); end > 0; end = path.lastIndexOf(Tree.SEPARATOR, end - 1)) {
+            long hash = hash(path.substring(0, end));
+            for (int i = 0; i < HASHES; i += 1) {
+                int bit = bitOf(hash, i, bits);
+                if ((filters[start + bit / 8] & (1 << (bit % 8))) == 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the filter of the paths a commit of tree TREEUID changes from
+     *         its first parent, at position PARENT of the graph, -1 if none.
+     */
+    private static byte[] filterOf(int parent, String treeUid) {
+        Set<String> paths = new HashSet<>();
+        for (String file : Tree.changes(parent < 0 ? null : treeAt(parent), treeUid).keySet()) {
+            for (int end = file.length(); end > 0;
+                 end = file.lastIndexOf(Tree.SEPARATOR, end - 1)) {
+                if (!paths.add(file.substring(0, end))) {
+                    break;
+                }
+            }
+        }
+        if (paths.size() > MAX_PATHS) {
+            return new byte[0];
+        }
+        byte[] filter = new byte[Math.max(MIN_FILTER_SIZE,
+                (paths.size() * BITS_PER_PATH + 7) / 8)];
+        int bits = 8 * filter.length;
+        for (String path : paths) {
+            long hash = hash(path);
+            for (int i = 0; i < HASHES; i += 1) {
+                int bit = bitOf(hash, i, bits);
+                filter[bit / 8] |= (byte) (1 << (bit % 8));
+            }
+        }
+        return filter;
+    }
+
+    private static String treeAt(int position) {
+        return Commit.getCommit(CommitGraph.uidAt(position)).getTreeUid();
+    }
+
+    /** @return the Ith of the bit positions of a path of HASH, in a filter of BITS bits. */
+    private static int bitOf(long hash, int i, int bits) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32) | 1;
+        return Math.floorMod(first + i * second, bits);
+    }
+
+    private static long hash(String path) {
+        long hash = FNV_OFFSET;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /** Write one entry and record it in memory. */
+    private static void append(DataOutputStream out, byte[] filter) throws IOException {
+        out.writeInt(filter.length);
+        out.write(filter);
+        int end = offsets[count];
+        if (filters.length < end + filter.length) {
+            filters = Arrays.copyOf(filters, Math.max(end + filter.length, 2 * filters.length));
+        }
+        System.arraycopy(filter, 0, filters, end, filter.length);
+        if (offsets.length < count + 2) {
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length + 2);
+        }
+        count += 1;
+        offsets[count] = end + filter.length;
+    }
+
+    private static void load() {
+        if (count >= 0) {
+            return;
+        }
+        if (!CHANGED_PATHS_FILE.exists()) {
+            invalidate();
+            return;
+        }
+        ByteBuffer contents = ByteBuffer.wrap(readContents(CHANGED_PATHS_FILE));
+        if (contents.capacity() < HEADER_SIZE
+                || contents.getInt() != MAGIC || contents.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a gitlet changed-path file.");
+        }
+        filters = new byte[contents.remaining()];
+        offsets = new int[16];
+        count = 0;
+        torn = false;
+        while (contents.hasRemaining()) {
+            int length = contents.remaining() >= 4 ? contents.getInt() : -1;
+            if (length < 0 || length > contents.remaining()) {
+                torn = true;
+                break;
+            }
+            contents.get(filters, offsets[count], length);
+            if (offsets.length < count + 2) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            count += 1;
+            offsets[count] = offsets[count - 1] + length;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/**
+ * Compression of stored objects.
+ * Every object written through a codec starts with the id of that codec,
+ * so objects written under different settings can be read side by side,
+ * and the codec used for new objects is chosen by the core.compression setting.
+ * Objects written before codecs existed are bare zlib streams, whose first
+ * byte is always 0x78, and are still read as deflated content.
+ *
+ * @author PainJoker
+ */
+public interface Codec {
+    /** Setting naming the codec of new objects. */
+    String SETTING = "core.compression";
+
+    /** Stores the content as it is. */
+    Codec NONE = new Plain();
+
+    /** Deflate at its default level, the best size for text. */
+    Codec DEFLATE = new Deflate((byte) 1, "deflate", Deflater.DEFAULT_COMPRESSION);
+
+    /** Deflate at its fastest level, trading some size for write speed. */
+    Codec FAST = new Deflate((byte) 2, "fast", Deflater.BEST_SPEED);
+
+    List<Codec> ALL = List.of(NONE, DEFLATE, FAST);
+
+    /** First byte of a zlib stream written before objects carried a codec id. */
+    int LEGACY_HEADER = 0x78;
+
+    /** @return the id written in front of every object of this codec. */
+    byte getId();
+
+    /** @return the name of this codec in the settings. */
+    String getName();
+
+    /** @return a stream compressing everything written to OUT. */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /** @return a stream decompressing the content read from IN. */
+    InputStream decompress(InputStream in) throws IOException;
+
+    /** @return the codec named NAME. */
+    static Codec forName(String name) {
+        for (Codec codec : ALL) {
+            if (codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        throw error("Unknown compression codec %s.", name);
+    }
+
+    /** @return the codec with the id ID. */
+    static Codec forId(int id) {
+        for (Codec codec : ALL) {
+            if (codec.getId() == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown codec id " + id);
+    }
+
+    /** @return the codec chosen for new objects of this repository. */
+    static Codec configured() {
+        return forName(Config.get(SETTING, DEFLATE.getName()));
+    }
+
+    /**
+     * Write the header of the object OUT with CODEC, then wrap OUT in it.
+     * @return the stream the object content is written to
+     */
+    static OutputStream writer(Codec codec, OutputStream out) throws IOException {
+        out.write(codec.getId());
+        return codec.compress(out);
+    }
+
+    /**
+     * Read the header of the object IN and wrap IN in its codec.
+     * @return the stream the object content is read from
+     */
+    static InputStream reader(InputStream in) throws IOException {
+        PushbackInputStream stream = new PushbackInputStream(in, 1);
+        int header = stream.read();
+        if (header == LEGACY_HEADER) {
+            stream.unread(header);
+            return DEFLATE.decompress(stream);
+        } else if (header < 0) {
+            throw new IllegalArgumentException("Empty object.");
+        }
+        return forId(header).decompress(stream);
+    }
+
+    /** The codec storing content uncompressed. */
+    final class Plain implements Codec {
+        private Plain() {
+        }
+
+        @Override
+        public byte getId() {
+            return 0;
+        }
+
+        @Override
+        public String getName() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    }
+
+    /** The codecs storing content as a zlib stream, at some compression level. */
+    final class Deflate implements Codec {
+        private final byte id;
+        private final String name;
+        private final int level;
+
+        private Deflate(byte id, String name, int level) {
+            this.id = id;
+            this.name = name;
+            this.level = level;
+        }
+
+        @Override
+        public byte getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(out, deflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in, new Inflater()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+    }
+}
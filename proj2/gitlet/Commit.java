@@ -1,7 +1,6 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -14,7 +13,7 @@ import static gitlet.Utils.*;
  *
  *  @author PainJoker
  */
-public class Commit implements Serializable {
+public class Commit {
     public static final String EMPTY_PARENT = "";
     /**
      * Date format of commit.
@@ -25,14 +24,17 @@ public class Commit implements Serializable {
     /** Data formatter. */
     private static final SimpleDateFormat FORMATTER = new SimpleDateFormat(PATTERN);
 
+    /** Recently read commits. */
+    private static final LruCache<String, Commit> CACHE = new LruCache<>(1024);
+
     /** The message of this Commit. */
     private final String message;
 
     /**
-     * The time stamp of a commit
+     * The time stamp of a commit in milliseconds since the epoch,
      * initially with 00:00:00 UTC, Thursday, 1 January 1970 (the "Unix" epoch)
      */
-    private final String date;
+    private final long timestamp;
 
     /** the SHA-1 of one commit. */
     private final String uid;
@@ -40,19 +42,19 @@ public class Commit implements Serializable {
     /** the SHA-1 of parent commit. */
     private final String parentUid;
 
-    /** store the mapping between staged file and its corresponding SHA-1. */
-    private final TreeMap<String, String> files;
+    /** the SHA-1 of the root tree holding the tracked files. */
+    private final String treeUid;
 
     /** merged parent, may be null. */
     private final String secondParentUid;
 
     public Commit() {
-        date = FORMATTER.format(new Date(0));
+        timestamp = 0;
         this.parentUid = EMPTY_PARENT;
         this.secondParentUid = EMPTY_PARENT;
-        files = new TreeMap<>();
+        treeUid = Tree.storeEmpty();
         this.message = "initial commit";
-        uid = sha1(this.date, this.message, this.parentUid, serialize(this.files));
+        uid = sha1(CommitCodec.encode(this));
     }
 
     public Commit(String message, String parentUid, String secondParentUid,
@@ -62,37 +64,66 @@ public class Commit implements Serializable {
         this.secondParentUid = secondParentUid;
 
         Commit parent = getCommit(parentUid);
-        files = parent.getFiles();
+        TreeMap<String, String> changes = new TreeMap<>(staged);
         for (String file : removed) {
-            files.remove(file);
-        }
-        for (String file : staged.keySet()) {
-            if (files.containsKey(file)) {
-                files.replace(file, staged.get(file));
-            } else {
-                files.put(file, staged.get(file));
-            }
+            changes.put(file, null);
         }
-        date = FORMATTER.format(new Date());
-        uid = sha1(this.date, this.message, this.parentUid, serialize(this.files));
+        treeUid = Tree.update(parent.getTreeUid(), changes);
+        timestamp = System.currentTimeMillis();
+        uid = sha1(CommitCodec.encode(this));
+    }
+
+    /** Copy COMMIT with the given parents and root tree, keeping its message and time stamp. */
+    Commit(Commit commit, String parentUid, String secondParentUid, String treeUid) {
+        this.message = commit.message;
+        this.timestamp = commit.timestamp;
+        this.parentUid = parentUid;
+        this.secondParentUid = secondParentUid;
+        this.treeUid = treeUid;
+        uid = sha1(CommitCodec.encode(this));
+    }
+
+    /** Rebuild a stored commit, used by CommitCodec. */
+    Commit(String uid, String message, long timestamp, String parentUid,
+           String secondParentUid, String treeUid) {
+        this.uid = uid;
+        this.message = message;
+        this.timestamp = timestamp;
+        this.parentUid = parentUid;
+        this.secondParentUid = secondParentUid;
+        this.treeUid = treeUid;
     }
 
     /**
      * Retrieve Commit object from its uid.
-     * @param commitUid String
+     * @param commitUid String, may be abbreviated
      * @return Commit object
      */
     public static Commit getCommit(String commitUid) {
-        for (String committedUid : Objects.requireNonNull(plainFilenamesIn(COMMITS_DIR))) {
-            if (committedUid.contains(commitUid)) {
-                File commitPath = join(COMMITS_DIR, committedUid);
-                return readObject(commitPath, Commit.class);
-            }
+        List<String> matches = CommitIndex.lookup(commitUid, 2);
+        if (matches.isEmpty()) {
+            throw error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw error("Ambiguous commit id.");
         }
-        // commitUid is not exist.
-        System.out.println("No commit with that id exists.");
-        System.exit(0);
-        return null;
+        return readCommit(matches.get(0));
+    }
+
+    /** Read the commit with the full uid UID, either loose or packed. */
+    private static Commit readCommit(String uid) {
+        Commit commit = CACHE.get(uid);
+        if (commit != null) {
+            return commit;
+        }
+        commit = CommitCodec.decode(uid, readContents(uid));
+        CACHE.put(uid, commit);
+        return commit;
+    }
+
+    /** @return the stored form of the commit with the full uid UID, either loose or packed. */
+    static byte[] readContents(String uid) {
+        File commitPath = join(COMMITS_DIR, uid);
+        return commitPath.exists() ? Utils.readContents(commitPath) : PackReader.read(uid);
     }
 
     public boolean isInitialCommit() {
@@ -102,6 +133,12 @@ public class Commit implements Serializable {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
+        appendLog(sb);
+        return sb.toString();
+    }
+
+    /** Append the log entry of this commit to SB. */
+    public void appendLog(StringBuilder sb) {
         sb.append("===\n");
         sb.append("commit ");
         sb.append(uid);
@@ -114,24 +151,34 @@ public class Commit implements Serializable {
             sb.append("\n");
         }
         sb.append("Date: ");
-        sb.append(date);
+        sb.append(getDate());
         sb.append("\n");
         sb.append(message);
         sb.append("\n");
-        return sb.toString();
     }
 
     /** Move commit to the COMMIT_DIR. */
     public void store() {
-        writeObject(new File(COMMITS_DIR, uid), this);
+        File commitPath = new File(COMMITS_DIR, uid);
+        if (!commitPath.exists() && !PackReader.contains(uid)) {
+            FileUtils.writeAtomic(commitPath, (Object) CommitCodec.encode(this));
+        }
+        CommitGraph.add(this);
+        CommitIndex.add(uid);
+        MessageIndex.add(this);
     }
 
     public String getMessage() {
         return message;
     }
 
+    /** @return the time stamp formatted for log output. */
     public String getDate() {
-        return date;
+        return FORMATTER.format(new Date(timestamp));
+    }
+
+    public long getTimestamp() {
+        return timestamp;
     }
 
     public String getUid() {
@@ -146,8 +193,22 @@ public class Commit implements Serializable {
         return secondParentUid;
     }
 
+    public String getTreeUid() {
+        return treeUid;
+    }
+
+    /** @return a fresh mapping between every tracked file and its blob uid. */
     public TreeMap<String, String> getFiles() {
-        return files;
+        return Tree.flatten(treeUid);
+    }
+
+    /**
+     * Look up a single tracked file without listing the others.
+     * @param fileName path of the file
+     * @return blob uid, or null if the file is not tracked
+     */
+    public String getFile(String fileName) {
+        return Tree.lookup(treeUid, fileName);
     }
 
     private boolean isMerged() {
@@ -0,0 +1,76 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static gitlet.Utils.*;
+
+/**
+ * Binary encoding of commits.
+ * A commit is written as
+ *     MAGIC(4) timestamp(8) message parent secondParent tree(20)
+ * where every string is a 4-byte length followed by its UTF-8 bytes and
+ * TREE is the raw uid of the root Tree holding the tracked files.
+ *
+ * @author PainJoker
+ */
+public class CommitCodec {
+    private static final int MAGIC = 0x47434d32;
+    private static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** @return the encoded form of COMMIT, which does not include its uid. */
+    public static byte[] encode(Commit commit) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeLong(commit.getTimestamp());
+            writeString(out, commit.getMessage());
+            writeString(out, commit.getParentUid());
+            writeString(out, commit.getSecondParentUid());
+            out.write(fromHex(commit.getTreeUid()));
+        } catch (IOException e) {
+            throw error("Internal error encoding commit.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a commit written by encode.
+     * @param uid uid the commit is stored under
+     * @param contents encoded commit
+     * @return Commit object
+     */
+    public static Commit decode(String uid, byte[] contents) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a gitlet commit: " + uid);
+            }
+            long timestamp = in.readLong();
+            String message = readString(in);
+            String parentUid = readString(in);
+            String secondParentUid = readString(in);
+            byte[] treeUid = new byte[UID_BYTES];
+            in.readFully(treeUid);
+            return new Commit(uid, message, timestamp, parentUid, secondParentUid,
+                    toHex(treeUid));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(raw.length);
+        out.write(raw);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] raw = new byte[in.readInt()];
+        in.readFully(raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,382 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static gitlet.Repository.COMMIT_GRAPH_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * Parent links of every commit, kept in COMMIT_GRAPH_FILE so that history
+ * walks run on int arrays instead of reading commit objects.
+ * The file starts with MAGIC and VERSION, followed by one fixed size entry
+ * per commit in the order the commits were stored:
+ *     uid(20) parent(4) secondParent(4) generation(4) timestamp(8)
+ * Parents are entry positions, -1 if absent, and always precede their children.
+ * The generation of a commit is one more than the largest of its parents',
+ * the initial commit having generation 1.
+ * The changed-path filters of ChangedPaths follow the same order.
+ *
+ * @author PainJoker
+ */
+public class CommitGraph {
+    private static final int MAGIC = 0x47434731;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int UID_BYTES = UID_LENGTH / 2;
+    private static final int ENTRY_SIZE = UID_BYTES + 20;
+
+    /** Marks used while painting the history in mergeBase and missing. */
+    private static final int FROM_FIRST = 1;
+    private static final int FROM_SECOND = 2;
+    private static final int STALE = 4;
+    private static final int RESULT = 8;
+
+    private static int size = -1;
+    private static byte[] uids;
+    private static int[] parents;
+    private static int[] secondParents;
+    private static int[] generations;
+    private static long[] timestamps;
+    private static HashMap<String, Integer> positions;
+
+    /** @return number of commits in the graph. */
+    public static int size() {
+        load();
+        return size;
+    }
+
+    /** @return position of commit UID, or -1 if it is not a stored commit. */
+    public static int indexOf(String uid) {
+        load();
+        Integer position = positions.get(uid);
+        if (position == null && CommitIndex.contains(uid)) {
+            rebuild();
+            position = positions.get(uid);
+        }
+        return position == null ? -1 : position;
+    }
+
+    public static String uidAt(int i) {
+        return toHex(Arrays.copyOfRange(uids, i * UID_BYTES, (i + 1) * UID_BYTES));
+    }
+
+    /** @return position of the first parent of commit I, -1 for the initial commit. */
+    public static int parentOf(int i) {
+        return parents[i];
+    }
+
+    /** @return position of the merged-in parent of commit I, -1 if it is not a merge. */
+    public static int secondParentOf(int i) {
+        return secondParents[i];
+    }
+
+    public static int generationOf(int i) {
+        return generations[i];
+    }
+
+    public static long timestampOf(int i) {
+        return timestamps[i];
+    }
+
+    /**
+     * Record a newly stored commit, whose parents must already be in the graph.
+     * @param commit the stored commit
+     */
+    public static void add(Commit commit) {
+        load();
+        if (positions.containsKey(commit.getUid())) {
+            return;
+        }
+        int parent = commit.isInitialCommit() ? -1 : indexOf(commit.getParentUid());
+        int secondParent = commit.getSecondParentUid().equals(Commit.EMPTY_PARENT)
+                ? -1 : indexOf(commit.getSecondParentUid());
+        boolean fresh = !COMMIT_GRAPH_FILE.exists();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(COMMIT_GRAPH_FILE, true)))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            append(out, commit.getUid(), parent, secondParent, commit.getTimestamp());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.markUnsynced(COMMIT_GRAPH_FILE);
+        ChangedPaths.add(commit, size - 1);
+    }
+
+    /**
+     * Check whether ANCESTOR can be reached from DESCENDANT through parent links.
+     * Commits with a lower generation than ANCESTOR are never expanded.
+     */
+    public static boolean isAncestor(int ancestor, int descendant) {
+        boolean[] visited = new boolean[size];
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(descendant);
+        while (!stack.isEmpty()) {
+            int i = stack.pop();
+            if (i == ancestor) {
+                return true;
+            }
+            if (visited[i] || generations[i] <= generations[ancestor]) {
+                continue;
+            }
+            visited[i] = true;
+            if (parents[i] >= 0) {
+                stack.push(parents[i]);
+            }
+            if (secondParents[i] >= 0) {
+                stack.push(secondParents[i]);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the latest common ancestor of two commits, following both parents of merges.
+     * The history is painted from both commits in decreasing generation order and the
+     * walk stops once every commit left to visit is below a common ancestor already found.
+     * @return uid of the merge base, or null if the commits share no history
+     */
+    public static String mergeBase(String first, String second) {
+        int a = indexOf(first);
+        int b = indexOf(second);
+        byte[] marks = new byte[size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) ->
+                generations[x] != generations[y]
+                        ? Integer.compare(generations[y], generations[x])
+                        : Long.compare(timestamps[y], timestamps[x]));
+        marks[a] |= FROM_FIRST;
+        marks[b] |= FROM_SECOND;
+        queue.add(a);
+        queue.add(b);
+        List<Integer> found = new ArrayList<>();
+        while (hasFreshEntry(queue, marks)) {
+            int i = queue.poll();
+            int paint = marks[i] & (FROM_FIRST | FROM_SECOND | STALE);
+            if (paint == (FROM_FIRST | FROM_SECOND)) {
+                if ((marks[i] & RESULT) == 0) {
+                    marks[i] |= RESULT;
+                    found.add(i);
+                }
+                paint |= STALE;
+            }
+            for (int parent : new int[] {parents[i], secondParents[i]}) {
+                if (parent >= 0 && (marks[parent] & paint) != paint) {
+                    marks[parent] |= paint;
+                    queue.add(parent);
+                }
+            }
+        }
+        for (int candidate : found) {
+            boolean redundant = false;
+            for (int other : found) {
+                if (other != candidate && isAncestor(candidate, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                return uidAt(candidate);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the commits reachable from WANT but from none of HAVES, the commits
+     * another repository holding HAVES and their history lacks to have WANT.
+     * The history is painted from both sides in decreasing generation order,
+     * so the walk stops as soon as every commit left to visit is had.
+     * @param haves uids of commits, those not stored here being ignored
+     * @return uids of the missing commits, parents first
+     */
+    public static List<String> missing(String want, Collection<String> haves) {
+        load();
+        byte[] marks = new byte[size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) ->
+                Integer.compare(generations[y], generations[x]));
+        for (String have : haves) {
+            int i = indexOf(have);
+            if (i >= 0) {
+                marks[i] |= STALE;
+                queue.add(i);
+            }
+        }
+        int start = indexOf(want);
+        marks[start] |= FROM_FIRST;
+        queue.add(start);
+        List<String> result = new ArrayList<>();
+        while (hasFreshEntry(queue, marks)) {
+            int i = queue.poll();
+            int paint = marks[i] & (FROM_FIRST | STALE);
+            if (paint == FROM_FIRST && (marks[i] & RESULT) == 0) {
+                marks[i] |= RESULT;
+                result.add(uidAt(i));
+            }
+            for (int parent : new int[] {parents[i], secondParents[i]}) {
+                if (parent >= 0 && (marks[parent] & paint) != paint) {
+                    marks[parent] |= paint;
+                    queue.add(parent);
+                }
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** Recreate the graph from every indexed commit, parents first, and its filters. */
+    public static void rebuild() {
+        ChangedPaths.invalidate();
+        List<Commit> order = new ArrayList<>();
+        HashMap<String, Commit> visited = new HashMap<>();
+        for (String root : CommitIndex.uids()) {
+            Deque<Commit> stack = new ArrayDeque<>();
+            if (!visited.containsKey(root)) {
+                stack.push(Commit.getCommit(root));
+            }
+            while (!stack.isEmpty()) {
+                Commit commit = stack.peek();
+                boolean ready = true;
+                for (String parent : new String[] {commit.getParentUid(),
+                                                   commit.getSecondParentUid()}) {
+                    if (!parent.equals(Commit.EMPTY_PARENT) && !visited.containsKey(parent)) {
+                        stack.push(Commit.getCommit(parent));
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    if (visited.put(commit.getUid(), commit) == null) {
+                        order.add(commit);
+                    }
+                }
+            }
+        }
+        File parent = COMMIT_GRAPH_FILE.getParentFile();
+        if (!parent.exists()) {
+            FileUtils.makeDir(parent);
+        }
+        uids = null;
+        parents = null;
+        secondParents = null;
+        generations = null;
+        timestamps = null;
+        positions = new HashMap<>();
+        size = 0;
+        File temp = FileUtils.tempFileFor(COMMIT_GRAPH_FILE);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Commit commit : order) {
+                int first = commit.isInitialCommit() ? -1 : positions.get(commit.getParentUid());
+                int second = commit.getSecondParentUid().equals(Commit.EMPTY_PARENT)
+                        ? -1 : positions.get(commit.getSecondParentUid());
+                append(out, commit.getUid(), first, second, commit.getTimestamp());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.moveAtomic(temp, COMMIT_GRAPH_FILE);
+        ChangedPaths.rebuild();
+    }
+
+    /** Drop the in-memory arrays, so that the next access reads the file again. */
+    static void forget() {
+        size = -1;
+        ChangedPaths.forget();
+    }
+
+    /** Write one entry and record it in the in-memory arrays. */
+    private static void append(DataOutputStream out, String uid, int parent,
+                               int secondParent, long timestamp) throws IOException {
+        int generation = 1 + Math.max(parent < 0 ? 0 : generations[parent],
+                                      secondParent < 0 ? 0 : generations[secondParent]);
+        out.write(fromHex(uid));
+        out.writeInt(parent);
+        out.writeInt(secondParent);
+        out.writeInt(generation);
+        out.writeLong(timestamp);
+        int i = positions.size();
+        grow(i + 1);
+        System.arraycopy(fromHex(uid), 0, uids, i * UID_BYTES, UID_BYTES);
+        parents[i] = parent;
+        secondParents[i] = secondParent;
+        generations[i] = generation;
+        timestamps[i] = timestamp;
+        positions.put(uid, i);
+        size = i + 1;
+    }
+
+    private static void grow(int capacity) {
+        if (parents == null || parents.length < capacity) {
+            int length = Math.max(capacity, parents == null ? 16 : 2 * parents.length);
+            uids = Arrays.copyOf(uids == null ? new byte[0] : uids, length * UID_BYTES);
+            parents = Arrays.copyOf(parents == null ? new int[0] : parents, length);
+            secondParents = Arrays.copyOf(secondParents == null ? new int[0] : secondParents,
+                    length);
+            generations = Arrays.copyOf(generations == null ? new int[0] : generations, length);
+            timestamps = Arrays.copyOf(timestamps == null ? new long[0] : timestamps, length);
+        }
+    }
+
+    private static void load() {
+        if (size >= 0) {
+            return;
+        }
+        if (!COMMIT_GRAPH_FILE.exists()) {
+            rebuild();
+            return;
+        }
+        ByteBuffer contents = ByteBuffer.wrap(readContents(COMMIT_GRAPH_FILE));
+        if (contents.getInt() != MAGIC || contents.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a gitlet commit graph.");
+        }
+        if ((contents.capacity() - HEADER_SIZE) % ENTRY_SIZE != 0) {
+            rebuild();
+            return;
+        }
+        int count = (contents.capacity() - HEADER_SIZE) / ENTRY_SIZE;
+        uids = new byte[count * UID_BYTES];
+        parents = new int[count];
+        secondParents = new int[count];
+        generations = new int[count];
+        timestamps = new long[count];
+        positions = new HashMap<>(2 * count);
+        byte[] uid = new byte[UID_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            contents.get(uid);
+            System.arraycopy(uid, 0, uids, i * UID_BYTES, UID_BYTES);
+            parents[i] = contents.getInt();
+            secondParents[i] = contents.getInt();
+            generations[i] = contents.getInt();
+            timestamps[i] = contents.getLong();
+            positions.put(toHex(uid), i);
+        }
+        size = count;
+    }
+
+    private static boolean hasFreshEntry(PriorityQueue<Integer> queue, byte[] marks) {
+        for (int i : queue) {
+            if ((marks[i] & STALE) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
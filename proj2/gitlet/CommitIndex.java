@@ -0,0 +1,186 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import static gitlet.Repository.COMMITS_DIR;
+import static gitlet.Repository.COMMIT_INDEX_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * Sorted table of every stored commit uid.
+ * Each entry is the 20 raw bytes of a SHA-1, so full and abbreviated
+ * uids are resolved by binary search instead of listing COMMITS_DIR.
+ *
+ * @author PainJoker
+ */
+public class CommitIndex {
+    /** Size in bytes of one raw SHA-1 entry. */
+    private static final int ENTRY_SIZE = UID_LENGTH / 2;
+
+    /** Memory mapped view of COMMIT_INDEX_FILE, null until first lookup. */
+    private static MappedByteBuffer table;
+
+    /**
+     * Find the uids starting with PREFIX.
+     * @param prefix full or abbreviated hex uid
+     * @param limit stop after this many matches
+     * @return matching uids in sorted order, empty if none or PREFIX is not hex
+     */
+    public static List<String> lookup(String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        int[] nibbles = toNibbles(prefix);
+        if (nibbles == null || nibbles.length > UID_LENGTH) {
+            return matches;
+        }
+        MappedByteBuffer entries = getTable();
+        int size = entries.capacity() / ENTRY_SIZE;
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(entries, mid, nibbles) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < size && matches.size() < limit; i += 1) {
+            if (compare(entries, i, nibbles) != 0) {
+                break;
+            }
+            matches.add(entryAt(entries, i));
+        }
+        return matches;
+    }
+
+    /** @return true if a commit with the full uid UID is indexed. */
+    public static boolean contains(String uid) {
+        return uid.length() == UID_LENGTH && !lookup(uid, 1).isEmpty();
+    }
+
+    /** @return every indexed uid in lexicographic order. */
+    public static List<String> uids() {
+        MappedByteBuffer entries = getTable();
+        int size = entries.capacity() / ENTRY_SIZE;
+        List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i += 1) {
+            result.add(entryAt(entries, i));
+        }
+        return result;
+    }
+
+    /**
+     * Insert UID into the index, keeping the table sorted.
+     * @param uid full hex uid of a newly stored commit
+     */
+    public static void add(String uid) {
+        byte[] old = COMMIT_INDEX_FILE.exists() ? readContents(COMMIT_INDEX_FILE) : new byte[0];
+        byte[] entry = fromHex(uid);
+        int size = old.length / ENTRY_SIZE;
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Arrays.compareUnsigned(old, mid * ENTRY_SIZE, (mid + 1) * ENTRY_SIZE,
+                    entry, 0, ENTRY_SIZE);
+            if (cmp == 0) {
+                return;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        byte[] updated = new byte[old.length + ENTRY_SIZE];
+        System.arraycopy(old, 0, updated, 0, lo * ENTRY_SIZE);
+        System.arraycopy(entry, 0, updated, lo * ENTRY_SIZE, ENTRY_SIZE);
+        System.arraycopy(old, lo * ENTRY_SIZE, updated, (lo + 1) * ENTRY_SIZE,
+                old.length - lo * ENTRY_SIZE);
+        write(updated);
+    }
+
+    /** Recreate the index from the stored commits, for repositories made without one. */
+    public static void rebuild() {
+        TreeSet<String> committed = new TreeSet<>(PackReader.uids(PackReader.COMMIT));
+        committed.addAll(Objects.requireNonNull(plainFilenamesIn(COMMITS_DIR)));
+        byte[] entries = new byte[committed.size() * ENTRY_SIZE];
+        int i = 0;
+        for (String uid : committed) {
+            System.arraycopy(fromHex(uid), 0, entries, i * ENTRY_SIZE, ENTRY_SIZE);
+            i += 1;
+        }
+        write(entries);
+    }
+
+    /** Forget the mapped table so that the next access sees a rewritten index. */
+    static void forget() {
+        table = null;
+    }
+
+    private static void write(byte[] entries) {
+        table = null;
+        File parent = COMMIT_INDEX_FILE.getParentFile();
+        if (!parent.exists()) {
+            FileUtils.makeDir(parent);
+        }
+        FileUtils.writeAtomic(COMMIT_INDEX_FILE, (Object) entries);
+    }
+
+    private static MappedByteBuffer getTable() {
+        if (table == null) {
+            if (!COMMIT_INDEX_FILE.exists()) {
+                rebuild();
+            }
+            try (RandomAccessFile file = new RandomAccessFile(COMMIT_INDEX_FILE, "r")) {
+                FileChannel channel = file.getChannel();
+                table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Compare the leading nibbles of entry I with PREFIX.
+     * @return 0 if entry I starts with PREFIX, otherwise the ordering sign
+     */
+    private static int compare(MappedByteBuffer entries, int i, int[] prefix) {
+        int base = i * ENTRY_SIZE;
+        for (int n = 0; n < prefix.length; n += 1) {
+            int b = entries.get(base + n / 2) & 0xff;
+            int nibble = n % 2 == 0 ? b >>> 4 : b & 0x0f;
+            if (nibble != prefix[n]) {
+                return nibble - prefix[n];
+            }
+        }
+        return 0;
+    }
+
+    private static String entryAt(MappedByteBuffer entries, int i) {
+        byte[] raw = new byte[ENTRY_SIZE];
+        entries.get(i * ENTRY_SIZE, raw);
+        return toHex(raw);
+    }
+
+    private static int[] toNibbles(String hex) {
+        int[] nibbles = new int[hex.length()];
+        for (int i = 0; i < hex.length(); i += 1) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0 || Character.isUpperCase(hex.charAt(i))) {
+                return null;
+            }
+            nibbles[i] = digit;
+        }
+        return nibbles;
+    }
+}
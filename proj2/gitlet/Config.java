@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static gitlet.Repository.CONFIG_FILE;
+
+/**
+ * Settings of the repository, kept as "key=value" lines in .gitlet/config.
+ * The file is read once and every change is written through to disk;
+ * a missing file or key stands for the default value.
+ *
+ * @author PainJoker
+ */
+public class Config {
+    private static Properties settings;
+
+    /** @return the value of KEY, or DEFAULTVALUE if it is not set. */
+    public static String get(String key, String defaultValue) {
+        return load().getProperty(key, defaultValue);
+    }
+
+    /** Set KEY to VALUE. */
+    public static synchronized void set(String key, String value) {
+        load().setProperty(key, value);
+        save();
+    }
+
+    /** Unset KEY. */
+    public static synchronized void remove(String key) {
+        load().remove(key);
+        save();
+    }
+
+    /** Drop the settings read, so that the next access reads them again. */
+    static synchronized void forget() {
+        settings = null;
+    }
+
+    private static void save() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            settings.store(out, null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.writeAtomic(CONFIG_FILE, (Object) out.toByteArray());
+    }
+
+    private static synchronized Properties load() {
+        if (settings != null) {
+            return settings;
+        }
+        settings = new Properties();
+        if (CONFIG_FILE.exists()) {
+            try (InputStream in = Files.newInputStream(CONFIG_FILE.toPath())) {
+                settings.load(in);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return settings;
+    }
+}
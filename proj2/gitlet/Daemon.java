@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/**
+ * Serves gitlet commands from one long-running JVM over the Unix domain
+ * socket SOCKET_FILE, so that scripted workloads skip JVM startup and keep
+ * the refs, the stage area, the indexes, the pack, the settings and recently
+ * read commits and trees in memory.
+ * Other processes may change the repository between two requests, as the
+ * server side of push does or any command run while no daemon is up. Every
+ * request therefore runs under the repository lock, and each cached part is
+ * read again before it only if the stat data of one of its files, its file
+ * key, size and modification time, differs from that recorded once the
+ * previous request was done. Commits and trees are never read again, being
+ * content addressed. After an internal error every part is read again.
+ * A request is the argument count(4) followed by each argument as written by
+ * DataOutputStream.writeUTF. The reply is the output of the command, after
+ * which the connection is closed. Requests are served one at a time; one cut
+ * short or holding more than MAX_ARGS arguments is dropped unanswered.
+ *
+ * @author PainJoker
+ */
+public class Daemon {
+    private static final UnixDomainSocketAddress ADDRESS =
+            UnixDomainSocketAddress.of(SOCKET_FILE.toPath());
+
+    /** Largest argument count of a request, beyond what a command line can hold. */
+    private static final int MAX_ARGS = 1 << 20;
+
+    /** A part of the repository cached in memory and the files it is read from. */
+    private static class Cache {
+        private final Runnable forget;
+        private final File[] files;
+        private List<Object> stamps;
+
+        Cache(Runnable forget, File... files) {
+            this.forget = forget;
+            this.files = files;
+        }
+
+        /** Drop the cached part unless its files are as last recorded. */
+        void revalidate() {
+            if (stamps == null || !stamps.equals(stampsOf(files))) {
+                forget.run();
+            }
+        }
+
+        /** Record the stat data of the files, the cached part being up to date. */
+        void record() {
+            stamps = stampsOf(files);
+        }
+
+        /** Drop the cached part, to be read again by the next request. */
+        void clear() {
+            forget.run();
+            stamps = null;
+        }
+    }
+
+    private static final List<Cache> CACHES = List.of(
+            new Cache(BranchManager::forget, HEAD_FILE, PACKED_REFS_FILE, REF_LOG_FILE,
+                      BRANCH_FILE),
+            new Cache(BufferManager::forget, STAGED_FILE, REMOVED_FILE),
+            new Cache(CommitIndex::forget, COMMIT_INDEX_FILE),
+            new Cache(CommitGraph::forget, COMMIT_GRAPH_FILE, CHANGED_PATHS_FILE),
+            new Cache(PackReader::close, PACK_FILE, PACK_INDEX_FILE),
+            new Cache(Config::forget, CONFIG_FILE),
+            new Cache(StatCache::forget, STAT_CACHE_FILE));
+
+    /** gitlet daemon handler: serve requests until asked to stop. */
+    public static void serve() {
+        if (SOCKET_FILE.exists()) {
+            try (SocketChannel ignored = SocketChannel.open(ADDRESS)) {
+                throw error("A daemon is already running.");
+            } catch (IOException e) {
+                SOCKET_FILE.delete();
+            }
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(ADDRESS);
+            boolean serving = true;
+            while (serving) {
+                try (SocketChannel client = server.accept()) {
+                    serving = handle(client);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            SOCKET_FILE.delete();
+        }
+    }
+
+    /**
+     * Run one request, its output going to the client.
+     * @return false if the daemon should stop
+     */
+    private static boolean handle(SocketChannel client) {
+        String[] args;
+        try {
+            args = readRequest(Channels.newInputStream(client));
+        } catch (IOException e) {
+            return true;
+        }
+        PrintStream console = System.out;
+        PrintStream reply = new PrintStream(new BufferedOutputStream(
+                Channels.newOutputStream(client)), false, StandardCharsets.UTF_8);
+        System.setOut(reply);
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                boolean stop = args.length == 2 && args[1].equals("--stop");
+                System.out.println(stop ? "Daemon stopped." : "A daemon is already running.");
+                return !stop;
+            }
+            try (RepoLock ignored = RepoLock.acquire(() -> CACHES.forEach(Cache::revalidate))) {
+                try {
+                    Main.runLocked(args);
+                } finally {
+                    CACHES.forEach(Cache::record);
+                }
+            }
+            return true;
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+            return true;
+        } catch (RuntimeException e) {
+            System.out.println("Internal error: " + e.getMessage());
+            e.printStackTrace();
+            CACHES.forEach(Cache::clear);
+            return true;
+        } finally {
+            reply.flush();
+            System.setOut(console);
+        }
+    }
+
+    /**
+     * Send ARGS to the daemon serving this repository and print its reply.
+     * @return false if no daemon is running, the command then being run in this JVM
+     */
+    public static boolean forward(String[] args) {
+        if (!Files.exists(SOCKET_FILE.toPath())) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(ADDRESS);
+        } catch (IOException e) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            channel.shutdownOutput();
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+    /** @return the file key, size and modification time of each of FILES, null if missing. */
+    private static List<Object> stampsOf(File[] files) {
+        List<Object> stamps = new ArrayList<>();
+        for (File file : files) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                stamps.add(Arrays.asList(attributes.fileKey(), attributes.size(),
+                        attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)));
+            } catch (NoSuchFileException e) {
+                stamps.add(null);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return stamps;
+    }
+
+    private static String[] readRequest(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        int count = in.readInt();
+        if (count < 0 || count > MAX_ARGS) {
+            throw new IOException("Malformed request.");
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        return args;
+    }
+}
@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/**
+ * Binary deltas between two versions of a file.
+ * A delta starts with the lengths of the base and the result, followed by
+ * instructions which either copy a range of the base or insert literal bytes:
+ *     COPY   offset length
+ *     INSERT length bytes
+ * All numbers are written as unsigned varints.
+ *
+ * @author PainJoker
+ */
+public class Delta {
+    private static final int COPY = 1;
+    private static final int INSERT = 0;
+
+    /** Length of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK_SIZE = 16;
+
+    /** Multiplier of the rolling hash over a block. */
+    private static final int PRIME = 31;
+
+    /**
+     * Encode TARGET as a delta against BASE.
+     * @param base the version the delta will be applied to
+     * @param target the version to be reproduced
+     * @return encoded delta
+     */
+    public static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> blocks = indexBlocks(base);
+        int highPower = 1;
+        for (int i = 1; i < BLOCK_SIZE; i += 1) {
+            highPower *= PRIME;
+        }
+        int literalStart = 0;
+        int i = 0;
+        int hash = target.length >= BLOCK_SIZE ? hashBlock(target, 0) : 0;
+        while (i + BLOCK_SIZE <= target.length) {
+            Integer candidate = blocks.get(hash);
+            int length = candidate == null ? 0 : matchLength(base, candidate, target, i);
+            if (length >= BLOCK_SIZE) {
+                writeInsert(out, target, literalStart, i);
+                out.write(COPY);
+                writeVarint(out, candidate);
+                writeVarint(out, length);
+                i += length;
+                literalStart = i;
+                if (i + BLOCK_SIZE <= target.length) {
+                    hash = hashBlock(target, i);
+                }
+            } else {
+                if (i + BLOCK_SIZE < target.length) {
+                    hash = (hash - (target[i] & 0xff) * highPower) * PRIME
+                            + (target[i + BLOCK_SIZE] & 0xff);
+                }
+                i += 1;
+            }
+        }
+        writeInsert(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rebuild the version encoded by DELTA.
+     * @param base the version the delta was created against
+     * @param delta encoded delta
+     * @return the reproduced version
+     */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        int baseLength = readVarint(delta, pos);
+        if (baseLength != base.length) {
+            throw new IllegalArgumentException("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, result, written, length);
+                written += length;
+            } else {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, written, length);
+                pos[0] += length;
+                written += length;
+            }
+        }
+        return result;
+    }
+
+    private static HashMap<Integer, Integer> indexBlocks(byte[] base) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            blocks.putIfAbsent(hashBlock(base, offset), offset);
+        }
+        return blocks;
+    }
+
+    private static int hashBlock(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i += 1) {
+            hash = hash * PRIME + (data[i] & 0xff);
+        }
+        return hash;
+    }
+
+    private static int matchLength(byte[] base, int baseOffset, byte[] target, int targetOffset) {
+        int length = 0;
+        while (baseOffset + length < base.length && targetOffset + length < target.length
+                && base[baseOffset + length] == target[targetOffset + length]) {
+            length += 1;
+        }
+        return length;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
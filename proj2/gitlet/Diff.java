@@ -0,0 +1,246 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Line matching between two versions of a file, using Myers' O(ND) difference
+ * algorithm in its linear space form: the middle snake of the edit path is found
+ * by searching from both ends at once, and the two halves around it are
+ * solved recursively. Lines present in only one version can never match, so
+ * they are dropped before the search, which keeps unrelated files cheap.
+ * As in xdiff, a search whose edit cost passes the larger of MIN_COST and
+ * the square root of the input size gives up on the shortest path: it splits
+ * the range at the furthest point either direction reached, so that files
+ * rewritten throughout cost about (N + M) * sqrt(N + M) instead of (N + M) * D,
+ * at the price of a longer edit script.
+ *
+ * @author PainJoker
+ */
+public class Diff {
+    /** Edit cost below which a middle snake is always searched to the end. */
+    private static final int MIN_COST = 256;
+
+    private final int[] a;
+    private final int[] b;
+    private final int[] forward;
+    private final int[] backward;
+    private final int offset;
+    private final int[] matches;
+    private final int maxCost;
+
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        offset = (a.length + b.length + 1) / 2 + 1;
+        maxCost = Math.max(MIN_COST, (int) Math.sqrt(a.length + b.length));
+        forward = new int[2 * offset + 1];
+        backward = new int[2 * offset + 1];
+        matches = new int[a.length];
+        Arrays.fill(matches, -1);
+    }
+
+    /**
+     * Split CONTENT into lines, each keeping its line terminator.
+     * Bytes map one to one onto chars, so any content round-trips.
+     */
+    public static String[] lines(byte[] content) {
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /** @return the bytes of LINES joined back together. */
+    public static byte[] join(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line);
+        }
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Find a longest common subsequence of two line sequences.
+     * @return for every line of A, the index of the line of B it is matched
+     *         with, or -1; matched indices are increasing
+     */
+    public static int[] match(String[] a, String[] b) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] idsA = new int[a.length];
+        int[] idsB = new int[b.length];
+        for (int i = 0; i < a.length; i += 1) {
+            idsA[i] = ids.computeIfAbsent(a[i], k -> ids.size());
+        }
+        boolean[] inB = new boolean[ids.size()];
+        for (int j = 0; j < b.length; j += 1) {
+            Integer id = ids.get(b[j]);
+            idsB[j] = id == null ? -1 : id;
+            if (id != null) {
+                inB[id] = true;
+            }
+        }
+        int[] keptA = keep(idsA, i -> inB[idsA[i]]);
+        int[] keptB = keep(idsB, j -> idsB[j] >= 0);
+        int[] reducedA = new int[keptA.length];
+        int[] reducedB = new int[keptB.length];
+        for (int i = 0; i < keptA.length; i += 1) {
+            reducedA[i] = idsA[keptA[i]];
+        }
+        for (int j = 0; j < keptB.length; j += 1) {
+            reducedB[j] = idsB[keptB[j]];
+        }
+        Diff diff = new Diff(reducedA, reducedB);
+        diff.compare(0, reducedA.length, 0, reducedB.length);
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        for (int i = 0; i < keptA.length; i += 1) {
+            if (diff.matches[i] >= 0) {
+                result[keptA[i]] = keptB[diff.matches[i]];
+            }
+        }
+        return result;
+    }
+
+    private interface Filter {
+        boolean keep(int i);
+    }
+
+    private static int[] keep(int[] ids, Filter filter) {
+        int[] kept = new int[ids.length];
+        int count = 0;
+        for (int i = 0; i < ids.length; i += 1) {
+            if (filter.keep(i)) {
+                kept[count] = i;
+                count += 1;
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    /** Match the lines of a[aLo, aHi) against b[bLo, bHi). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            matches[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            matches[aHi] = bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        int startX = aLo + snake[0];
+        int startY = bLo + snake[1];
+        int endX = aLo + snake[2];
+        int endY = bLo + snake[3];
+        if (startX == aLo && startY == bLo && endX == aHi && endY == bHi) {
+            return;
+        }
+        compare(aLo, startX, bLo, startY);
+        for (int x = startX; x < endX; x += 1) {
+            matches[x] = startY + x - startX;
+        }
+        compare(endX, aHi, endY, bHi);
+    }
+
+    /**
+     * Find the snake in the middle of a shortest edit path of a[aLo, aHi) into
+     * b[bLo, bHi), searching forward from the start and backward from the end
+     * until the two searches overlap, or until the cost passes maxCost; the
+     * empty snake at the furthest point reached is then returned instead.
+     * @return start x, start y, end x and end y of the snake, relative to aLo and bLo
+     */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && forward[offset + k - 1] < forward[offset + k + 1]
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                        && x + backward[offset + delta - k] >= n) {
+                    return new int[] {startX, startY, x, y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && backward[offset + k - 1] < backward[offset + k + 1]
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                        && x + forward[offset + delta - k] >= n) {
+                    return new int[] {n - x, m - y, n - startX, m - startY};
+                }
+            }
+            if (d >= maxCost) {
+                return furthestPoint(d, n, m);
+            }
+        }
+        throw new IllegalStateException("No middle snake found.");
+    }
+
+    /**
+     * Find the point of an n by m range furthest from its nearer end among
+     * those reached by the searches of middleSnake after cost D.
+     * @return the point as an empty snake, or the whole range if no point lies
+     *         strictly inside it, leaving the range unmatched
+     */
+    private int[] furthestPoint(int d, int n, int m) {
+        int bestX = 0;
+        int bestY = 0;
+        int best = 0;
+        for (int k = -d; k <= d; k += 2) {
+            int x = Math.min(forward[offset + k], n);
+            int y = x - k;
+            if (y >= 0 && y <= m && x + y > best && x + y < n + m) {
+                best = x + y;
+                bestX = x;
+                bestY = y;
+            }
+            x = Math.min(backward[offset + k], n);
+            y = x - k;
+            if (y >= 0 && y <= m && x + y > best && x + y < n + m) {
+                best = x + y;
+                bestX = n - x;
+                bestY = m - y;
+            }
+        }
+        if (best == 0) {
+            return new int[] {0, 0, n, m};
+        }
+        return new int[] {bestX, bestY, bestX, bestY};
+    }
+}
@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Line level three-way merge of two versions of a file against their common base.
+ * Both versions are matched with the base, and the base lines matched in both
+ * split the files into stable regions, kept as they are, and changed regions.
+ * A changed region is taken from the side that changed it, and only when
+ * both sides changed it differently is it written between conflict markers.
+ *
+ * @author PainJoker
+ */
+public class Diff3 {
+    private final String[] base;
+    private final String[] ours;
+    private final String[] theirs;
+    private final List<String> merged = new ArrayList<>();
+    private boolean conflicted;
+
+    /** Merge OURS and THEIRS, two versions derived from BASE. */
+    public Diff3(byte[] base, byte[] ours, byte[] theirs) {
+        this.base = Diff.lines(base);
+        this.ours = Diff.lines(ours);
+        this.theirs = Diff.lines(theirs);
+        merge();
+    }
+
+    /** @return the merged file, with conflict markers around unresolved regions. */
+    public byte[] getContent() {
+        return Diff.join(merged);
+    }
+
+    /** @return true if some region was changed differently on both sides. */
+    public boolean isConflicted() {
+        return conflicted;
+    }
+
+    private void merge() {
+        int[] toOurs = Diff.match(base, ours);
+        int[] toTheirs = Diff.match(base, theirs);
+        int o = 0;
+        int a = 0;
+        int b = 0;
+        while (o < base.length) {
+            if (toOurs[o] == a && toTheirs[o] == b) {
+                merged.add(base[o]);
+                o += 1;
+                a += 1;
+                b += 1;
+                continue;
+            }
+            int next = o;
+            while (next < base.length && (toOurs[next] < 0 || toTheirs[next] < 0)) {
+                next += 1;
+            }
+            if (next == base.length) {
+                break;
+            }
+            resolve(o, next, a, toOurs[next], b, toTheirs[next]);
+            o = next;
+            a = toOurs[next];
+            b = toTheirs[next];
+        }
+        resolve(o, base.length, a, ours.length, b, theirs.length);
+    }
+
+    /** Merge the region base[oLo, oHi), ours[aLo, aHi) and theirs[bLo, bHi). */
+    private void resolve(int oLo, int oHi, int aLo, int aHi, int bLo, int bHi) {
+        String[] original = Arrays.copyOfRange(base, oLo, oHi);
+        String[] left = Arrays.copyOfRange(ours, aLo, aHi);
+        String[] right = Arrays.copyOfRange(theirs, bLo, bHi);
+        if (Arrays.equals(left, original) || Arrays.equals(left, right)) {
+            merged.addAll(Arrays.asList(right));
+        } else if (Arrays.equals(right, original)) {
+            merged.addAll(Arrays.asList(left));
+        } else {
+            conflicted = true;
+            merged.add("<<<<<<< HEAD\n");
+            addTerminated(left);
+            merged.add("=======\n");
+            addTerminated(right);
+            merged.add(">>>>>>>\n");
+        }
+    }
+
+    /** Add LINES, ending the last one with a newline so that a marker can follow. */
+    private void addTerminated(String[] lines) {
+        merged.addAll(Arrays.asList(lines));
+        int last = merged.size() - 1;
+        if (lines.length > 0 && !merged.get(last).endsWith("\n")) {
+            merged.set(last, merged.get(last) + "\n");
+        }
+    }
+}
@@ -1,14 +1,38 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Utils.*;
 
 /**
  * Handle the file or directory creation.
+ * Repository files are replaced atomically: new contents go to a temporary
+ * file in the same directory, which is renamed over the target, so a crash
+ * or a concurrent reader sees either the old or the new file, never a part.
+ * Written files are not synced one by one; sync() forces all of them and their
+ * directories to disk at once, at the points where an operation must be durable.
  *
  * @author PainJoker
  */
 public class FileUtils {
+    /** Files written since the last sync. */
+    private static final Set<Path> UNSYNCED = new LinkedHashSet<>();
+
     public static void makeDir(File dir) {
         if (!dir.mkdir()) {
             throw new RuntimeException("Failed to create directory " + dir);
@@ -22,4 +46,119 @@ public class FileUtils {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Atomically replace FILE with the concatenation of CONTENTS,
+     * each a byte array or a String written as UTF-8.
+     */
+    public static void writeAtomic(File file, Object... contents) {
+        File temp = tempFileFor(file);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp.toPath()))) {
+            for (Object part : contents) {
+                out.write(part instanceof byte[] ? (byte[]) part
+                        : ((String) part).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw new RuntimeException(e);
+        }
+        moveAtomic(temp, file);
+    }
+
+    /**
+     * Replace the ref FILE through the lock file FILE.lock: the lock is created
+     * exclusively, so that two writers of the same ref cannot interleave,
+     * filled with CONTENTS and renamed over FILE.
+     */
+    public static void writeLocked(File file, Object... contents) {
+        File lock = new File(file.getPath() + ".lock");
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException e) {
+            throw error("Unable to lock %s; remove %s if no other gitlet process is running.",
+                    file.getName(), lock.getPath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try (OutputStream out = Files.newOutputStream(lock.toPath())) {
+            for (Object part : contents) {
+                out.write(part instanceof byte[] ? (byte[]) part
+                        : ((String) part).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            lock.delete();
+            throw new RuntimeException(e);
+        }
+        moveAtomic(lock, file);
+    }
+
+    /**
+     * Append CONTENTS to FILE, creating it if needed.
+     * The new bytes are forced to disk by the next sync.
+     */
+    public static void append(File file, String contents) {
+        try {
+            Files.writeString(file.toPath(), contents, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        markUnsynced(file);
+    }
+
+    /** Atomically replace FILE with the serialized OBJ. */
+    public static void writeObjectAtomic(File file, Serializable obj) {
+        writeAtomic(file, (Object) serialize(obj));
+    }
+
+    /** @return a fresh temporary file in the directory of TARGET. */
+    public static File tempFileFor(File target) {
+        try {
+            return Files.createTempFile(target.getParentFile().toPath(),
+                    "." + target.getName(), ".tmp").toFile();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Rename SOURCE over TARGET in one step. */
+    public static void moveAtomic(File source, File target) {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        markUnsynced(target);
+    }
+
+    /** Remember that FILE was written in place and must be forced by the next sync. */
+    public static synchronized void markUnsynced(File file) {
+        UNSYNCED.add(file.toPath());
+    }
+
+    /** Force every file written since the last sync, then their directories, to disk. */
+    public static void sync() {
+        List<Path> files;
+        synchronized (FileUtils.class) {
+            files = new ArrayList<>(UNSYNCED);
+            UNSYNCED.clear();
+        }
+        Set<Path> dirs = new LinkedHashSet<>();
+        for (Path file : files) {
+            force(file, StandardOpenOption.WRITE);
+            dirs.add(file.toAbsolutePath().getParent());
+        }
+        for (Path dir : dirs) {
+            force(dir, StandardOpenOption.READ);
+        }
+    }
+
+    private static void force(Path path, StandardOpenOption mode) {
+        try (FileChannel channel = FileChannel.open(path, mode)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The file is gone, or directories cannot be synced on this platform.
+        }
+    }
 }
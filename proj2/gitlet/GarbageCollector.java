@@ -0,0 +1,181 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/**
+ * Removal of the objects no branch can reach any more.
+ * The mark phase walks the commit graph from every branch head and collects
+ * the trees and blobs of the reached commits, along with the staged blobs.
+ * The sweep then repacks the marked objects alone, deletes every loose
+ * object that is unmarked or now packed and the staged contents the stage
+ * area no longer refers to, and rebuilds the commit indexes.
+ *
+ * @author PainJoker
+ */
+public class GarbageCollector {
+    private final Set<String> commits = new HashSet<>();
+    private final Set<String> trees = new HashSet<>();
+    private final Set<String> blobs = new HashSet<>();
+    private final Set<String> staged;
+
+    private int unreachableCommits;
+    private int unreachableTrees;
+    private int unreachableBlobs;
+    private int abandonedStaged;
+    private long unreachableBytes;
+
+    private GarbageCollector() {
+        staged = new HashSet<>(BufferManager.getStaged().values());
+        mark();
+    }
+
+    /**
+     * gitlet gc handler.
+     * @param dryRun only report what would be removed
+     */
+    public static void collect(boolean dryRun) {
+        GarbageCollector collector = new GarbageCollector();
+        collector.count();
+        if (dryRun) {
+            collector.report("Unreachable");
+            System.out.println("Unreachable objects take " + collector.unreachableBytes
+                    + " bytes.");
+            return;
+        }
+        long before = objectsSize();
+        PackWriter.write(collector.live());
+        Journal.begin(Journal.GC);
+        PackWriter.completeRepack();
+        collector.sweep();
+        Journal.end();
+        collector.report("Removed");
+        System.out.println("Reclaimed " + collector.unreachableBytes + " bytes.");
+        System.out.println("Objects went from " + before + " to " + objectsSize()
+                + " bytes once packed.");
+    }
+
+    /**
+     * Move the written pack over the current one, delete the loose objects
+     * that are unreachable or packed and rebuild the indexes, if not done yet.
+     */
+    static void complete() {
+        PackWriter.completeRepack();
+        new GarbageCollector().sweep();
+    }
+
+    /** Pack the objects reachable now and remove the others, without journaling or reporting. */
+    static void prune() {
+        GarbageCollector collector = new GarbageCollector();
+        PackWriter.write(collector.live());
+        PackWriter.completeRepack();
+        collector.sweep();
+    }
+
+    private void sweep() {
+        Set<String> live = live();
+        for (File dir : new File[] {COMMITS_DIR, TREES_DIR, BLOBS_DIR}) {
+            for (String uid : Objects.requireNonNull(plainFilenamesIn(dir))) {
+                if (!live.contains(uid) || PackReader.contains(uid)) {
+                    join(dir, uid).delete();
+                }
+            }
+        }
+        for (String uid : Objects.requireNonNull(plainFilenamesIn(STAGED_DIR))) {
+            if (!staged.contains(uid)) {
+                join(STAGED_DIR, uid).delete();
+            }
+        }
+        CommitIndex.rebuild();
+        CommitGraph.rebuild();
+        MessageIndex.rebuild();
+    }
+
+    /** Mark every commit reachable from a branch, and its trees and blobs. */
+    private void mark() {
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (String branch : BranchManager.getBranches()) {
+            queue.add(CommitGraph.indexOf(BranchManager.getCommitUid(branch)));
+        }
+        while (!queue.isEmpty()) {
+            int position = queue.poll();
+            if (position < 0 || !commits.add(CommitGraph.uidAt(position))) {
+                continue;
+            }
+            queue.add(CommitGraph.parentOf(position));
+            queue.add(CommitGraph.secondParentOf(position));
+        }
+        for (String uid : commits) {
+            Tree.collect(Commit.getCommit(uid).getTreeUid(), trees, blobs);
+        }
+    }
+
+    /** @return uids of every marked object, staged blobs included. */
+    private Set<String> live() {
+        Set<String> live = new HashSet<>(commits);
+        live.addAll(trees);
+        live.addAll(blobs);
+        live.addAll(staged);
+        return live;
+    }
+
+    /** Count the unmarked objects, loose and packed, and the bytes they take. */
+    private void count() {
+        Set<String> live = live();
+        unreachableCommits = countLoose(COMMITS_DIR, live)
+                + countPacked(PackReader.uids(PackReader.COMMIT), live);
+        unreachableTrees = countLoose(TREES_DIR, live)
+                + countPacked(PackReader.uids(PackReader.TREE), live);
+        unreachableBlobs = countLoose(BLOBS_DIR, live)
+                + countPacked(PackReader.uids(PackReader.BLOB), live)
+                + countPacked(PackReader.uids(PackReader.DELTA), live);
+        abandonedStaged = countLoose(STAGED_DIR, staged);
+    }
+
+    private int countLoose(File dir, Set<String> live) {
+        int count = 0;
+        for (String uid : Objects.requireNonNull(plainFilenamesIn(dir))) {
+            if (!live.contains(uid)) {
+                count += 1;
+                unreachableBytes += join(dir, uid).length();
+            }
+        }
+        return count;
+    }
+
+    private int countPacked(List<String> uids, Set<String> live) {
+        int count = 0;
+        for (String uid : uids) {
+            if (!live.contains(uid)) {
+                count += 1;
+                unreachableBytes += PackReader.storedSize(uid);
+            }
+        }
+        return count;
+    }
+
+    private void report(String verb) {
+        System.out.println(verb + ": " + unreachableCommits + " commits, "
+                + unreachableTrees + " trees, " + unreachableBlobs + " blobs, "
+                + abandonedStaged + " abandoned staged files.");
+    }
+
+    /** @return bytes taken by the loose objects, the staged contents and the pack. */
+    private static long objectsSize() {
+        long total = PACK_FILE.length() + PACK_INDEX_FILE.length();
+        for (File dir : new File[] {COMMITS_DIR, TREES_DIR, BLOBS_DIR, STAGED_DIR}) {
+            for (String name : Objects.requireNonNull(plainFilenamesIn(dir))) {
+                total += join(dir, name).length();
+            }
+        }
+        return total;
+    }
+}
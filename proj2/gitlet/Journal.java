@@ -0,0 +1,87 @@
+package gitlet;
+
+import static gitlet.Repository.JOURNAL_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * Write-ahead record of the operation in progress, kept in JOURNAL_FILE.
+ * An operation first makes the objects it needs durable, then records its
+ * remaining steps here, performs them and finally deletes the record.
+ * The remaining steps are idempotent, so a record found at startup, left by
+ * a crash, is completed by running them again.
+ * A record is the operation followed by its arguments, separated by spaces
+ * and ended by a newline. A branch name, which may hold spaces of its own,
+ * is always the last argument and is read up to the final newline.
+ *
+ * @author PainJoker
+ */
+public class Journal {
+    /** commit UID BRANCH: point BRANCH to the stored commit UID and empty the stage area. */
+    public static final String COMMIT = "commit";
+
+    /**
+     * checkout UID FROM BRANCH: replace the working files of commit FROM with those
+     * of commit UID, point BRANCH to UID, make it HEAD and empty the stage area.
+     */
+    public static final String CHECKOUT = "checkout";
+
+    /** repack: move the written pack and index over the current ones. */
+    public static final String REPACK = "repack";
+
+    /**
+     * gc: move the written pack and index over the current ones, delete the
+     * unreachable and packed loose objects and rebuild the commit indexes.
+     */
+    public static final String GC = "gc";
+
+    /**
+     * migrate: point the branches and the stage area to the converted objects
+     * listed in MIGRATION_FILE, switch the format and remove the old objects.
+     */
+    public static final String MIGRATE = "migrate";
+
+    /** Durably record the operation OP with ARGS, along with every file written so far. */
+    public static void begin(String op, String... args) {
+        FileUtils.sync();
+        FileUtils.writeAtomic(JOURNAL_FILE, op + " " + String.join(" ", args) + "\n");
+        FileUtils.sync();
+    }
+
+    /** Make the steps of the recorded operation durable and drop the record. */
+    public static void end() {
+        FileUtils.sync();
+        JOURNAL_FILE.delete();
+    }
+
+    /** Complete the operation left by an interrupted command, if any. */
+    public static void recover() {
+        if (!JOURNAL_FILE.exists()) {
+            return;
+        }
+        String contents = readContentsAsString(JOURNAL_FILE);
+        String line = contents.substring(0, contents.lastIndexOf('\n'));
+        String[] record;
+        switch (line.split(" ", 2)[0]) {
+            case COMMIT:
+                record = line.split(" ", 3);
+                Repository.completeCommit(record[2], record[1]);
+                break;
+            case CHECKOUT:
+                record = line.split(" ", 4);
+                Repository.completeCheckout(record[3], record[1], record[2]);
+                break;
+            case REPACK:
+                PackWriter.completeRepack();
+                break;
+            case GC:
+                GarbageCollector.complete();
+                break;
+            case MIGRATE:
+                Migration.complete();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record " + line);
+        }
+        end();
+    }
+}
@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+import static gitlet.Utils.*;
+
+/**
+ * Options of log and global-log:
+ *     -n N               print at most N commits
+ *     --since DATE       skip commits made before DATE, as yyyy-MM-dd[ HH:mm[:ss]]
+ *     --format=oneline   print each commit as its abbreviated uid and first message line
+ *     -- PATH            only print the commits changing the file or directory PATH
+ *                        from their first parent, given last
+ *
+ * @author PainJoker
+ */
+public class LogOptions {
+    private int limit = Integer.MAX_VALUE;
+    private long since = Long.MIN_VALUE;
+    private boolean oneline;
+    private String path;
+
+    /**
+     * Parse the options following the command name.
+     * @param args command line, its first element being the command
+     */
+    public static LogOptions parse(String[] args) {
+        LogOptions options = new LogOptions();
+        for (int i = 1; i < args.length; i += 1) {
+            String arg = args[i];
+            if (arg.equals("-n") && i + 1 < args.length) {
+                i += 1;
+                options.limit = parseLimit(args[i]);
+            } else if (arg.equals("--since") && i + 1 < args.length) {
+                i += 1;
+                options.since = parseDate(args[i]);
+            } else if (arg.startsWith("--since=")) {
+                options.since = parseDate(arg.substring("--since=".length()));
+            } else if (arg.equals("--format=oneline")) {
+                options.oneline = true;
+            } else if (arg.equals("--") && i + 2 == args.length) {
+                i += 1;
+                options.path = parsePath(args[i]);
+            } else {
+                throw error("Incorrect operands.");
+            }
+        }
+        return options;
+    }
+
+    /** @return maximum number of commits to print. */
+    public int limit() {
+        return limit;
+    }
+
+    /** @return earliest time stamp to print, in milliseconds. */
+    public long since() {
+        return since;
+    }
+
+    public boolean oneline() {
+        return oneline;
+    }
+
+    /** @return path the printed commits must change, or null to print them all. */
+    public String path() {
+        return path;
+    }
+
+    private static int parseLimit(String text) {
+        try {
+            int limit = Integer.parseInt(text);
+            if (limit >= 0) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw error("Incorrect operands.");
+    }
+
+    private static String parsePath(String text) {
+        String path = text;
+        while (path.endsWith(Tree.SEPARATOR)) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.isEmpty()) {
+            throw error("Incorrect operands.");
+        }
+        return path;
+    }
+
+    private static long parseDate(String text) {
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            if (text.length() <= "yyyy-MM-dd".length()) {
+                return LocalDate.parse(text).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            return LocalDateTime.parse(text.replace(' ', 'T')).atZone(zone)
+                    .toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw error("Incorrect operands.");
+        }
+    }
+}
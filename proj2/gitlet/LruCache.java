@@ -0,0 +1,32 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded map dropping its least recently used entry once full.
+ * Only meant for immutable, content addressed objects, which never go stale.
+ *
+ * @author PainJoker
+ */
+public class LruCache<K, V> {
+    private final LinkedHashMap<K, V> entries;
+
+    public LruCache(int capacity) {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** @return the value cached for KEY, or null. */
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+}
@@ -1,20 +1,55 @@
 package gitlet;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+import static gitlet.Utils.*;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author PainJoker
  */
 public class Main {
+    /** Commands run without the repository lock, as they only read it or create it. */
+    private static final Set<String> UNLOCKED =
+            Set.of("init", "daemon", "log", "global-log", "find", "status", "diff",
+                    "upload-pack");
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
+        boolean served = args.length > 0 && Remote.SERVER_COMMANDS.contains(args[0]);
+        if (!served && Daemon.forward(args)) {
+            return;
+        }
+        try {
+            run(args);
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /** Run the command ARGS, user errors being thrown as GitletException. */
+    static void run(String[] args) {
+        if (args.length > 0 && !UNLOCKED.contains(args[0])) {
+            try (RepoLock ignored = RepoLock.acquire()) {
+                runLocked(args);
+            }
+            return;
+        }
+        runLocked(args);
+    }
+
+    /** Run the command ARGS, the caller holding the repository lock if it needs it. */
+    static void runLocked(String[] args) {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw error("Please enter a command.");
         }
+        dispatch(args);
+    }
+
+    private static void dispatch(String[] args) {
         String firstArg = args[0];
         switch(firstArg) {
             case "init":
@@ -23,8 +58,8 @@ public class Main {
                 break;
             case "add":
                 Repository.checkRepoInitialized();
-                validateNumArgs(args, 2);
-                Repository.add(args[1]);
+                validateMinArgs(args, 2);
+                Repository.add(Arrays.asList(args).subList(1, args.length));
                 break;
             case "commit":
                 Repository.checkRepoInitialized();
@@ -40,13 +75,12 @@ public class Main {
                 } else if (args.length == 2) {
                     Repository.checkoutBranch(args[1]);
                 } else {
-                    System.out.println("Incorrect operands.");
+                    throw error("Incorrect operands.");
                 }
                 break;
             case "log":
                 Repository.checkRepoInitialized();
-                validateNumArgs(args, 1);
-                Repository.log();
+                Repository.log(LogOptions.parse(args));
                 break;
             case "rm":
                 Repository.checkRepoInitialized();
@@ -55,11 +89,14 @@ public class Main {
                 break;
             case "global-log":
                 Repository.checkRepoInitialized();
-                validateNumArgs(args, 1);
-                Repository.globalLog();
+                Repository.globalLog(LogOptions.parse(args));
                 break;
             case "find":
                 Repository.checkRepoInitialized();
+                if (args.length == 3 && args[1].equals("--grep")) {
+                    Repository.grep(args[2]);
+                    break;
+                }
                 validateNumArgs(args, 2);
                 Repository.find(args[1]);
                 break;
@@ -88,9 +125,87 @@ public class Main {
                 validateNumArgs(args, 2);
                 Repository.merge(args[1]);
                 break;
+            case "diff":
+                Repository.checkRepoInitialized();
+                if (args.length == 2 && args[1].equals("--staged")) {
+                    Repository.diffStaged();
+                } else if (args.length <= 3) {
+                    Repository.diff(Arrays.copyOfRange(args, 1, args.length));
+                } else {
+                    throw error("Incorrect operands.");
+                }
+                break;
+            case "repack":
+                Repository.checkRepoInitialized();
+                validateNumArgs(args, 1);
+                Repository.repack();
+                break;
+            case "migrate":
+                Repository.checkRepoInitialized();
+                validateNumArgs(args, 1);
+                Repository.migrate();
+                break;
+            case "add-remote":
+                Repository.checkRepoInitialized();
+                validateNumArgs(args, 3);
+                Remote.add(args[1], args[2]);
+                break;
+            case "rm-remote":
+                Repository.checkRepoInitialized();
+                validateNumArgs(args, 2);
+                Remote.remove(args[1]);
+                break;
+            case "fetch":
+                Repository.checkRepoInitialized();
+                validateNumArgs(args, 3);
+                Remote.fetch(args[1], args[2]);
+                break;
+            case "push":
+                Repository.checkRepoInitialized();
+                validateNumArgs(args, 3);
+                Remote.push(args[1], args[2]);
+                break;
+            case "pull":
+                Repository.checkRepoInitialized();
+                validateNumArgs(args, 3);
+                Remote.pull(args[1], args[2]);
+                break;
+            case "upload-pack":
+                Repository.checkRepoInitialized();
+                Remote.uploadPack();
+                break;
+            case "receive-pack":
+                Repository.checkRepoInitialized();
+                Remote.receivePack();
+                break;
+            case "gc":
+                Repository.checkRepoInitialized();
+                if (args.length == 2 && args[1].equals("--dry-run")) {
+                    Repository.gc(true);
+                } else {
+                    validateNumArgs(args, 1);
+                    Repository.gc(false);
+                }
+                break;
+            case "config":
+                Repository.checkRepoInitialized();
+                if (args.length == 2) {
+                    Repository.config(args[1], null);
+                } else {
+                    validateNumArgs(args, 3);
+                    Repository.config(args[1], args[2]);
+                }
+                break;
+            case "daemon":
+                Repository.checkRepoInitialized();
+                if (args.length == 2 && args[1].equals("--stop")) {
+                    throw error("No daemon is running.");
+                }
+                validateNumArgs(args, 1);
+                Daemon.serve();
+                break;
             default:
-                System.out.println("No command with that name exists.");
-                System.exit(0);
+                throw error("No command with that name exists.");
         }
     }
 
@@ -102,8 +217,14 @@ public class Main {
      */
     public static void validateNumArgs(String[] args, int n) {
         if (args.length != n) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Checks that at least N arguments were given. */
+    public static void validateMinArgs(String[] args, int n) {
+        if (args.length < n) {
+            throw error("Incorrect operands.");
         }
     }
 }
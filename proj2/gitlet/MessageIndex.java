@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Repository.MESSAGE_INDEX_DIR;
+import static gitlet.Repository.TRIGRAM_INDEX_DIR;
+import static gitlet.Repository.WORD_INDEX_DIR;
+import static gitlet.Utils.*;
+
+/**
+ * Commit messages and the trigrams they contain, each mapped to the commits using them.
+ * A trigram is any run of three characters of the lower case message, so
+ * that any text of three or more characters is found inside words as well
+ * as across them.
+ * Keys are hashed with SHA-1 and spread over 256 bucket files named after
+ * the first byte of the hash, in MESSAGE_INDEX_DIR for whole messages and
+ * TRIGRAM_INDEX_DIR for trigrams. A bucket is a list of fixed size records
+ *     key hash(20) commit uid(20)
+ * appended to as commits are stored, each bucket a commit touches being
+ * written once with all of its records, so a lookup reads a single bucket.
+ * A record cut short by a crash is overwritten by the next append.
+ *
+ * @author PainJoker
+ */
+public class MessageIndex {
+    private static final int UID_BYTES = UID_LENGTH / 2;
+    private static final int RECORD_SIZE = 2 * UID_BYTES;
+
+    /** Record the message of a newly stored commit. */
+    public static void add(Commit commit) {
+        if (!MESSAGE_INDEX_DIR.exists() || !TRIGRAM_INDEX_DIR.exists()) {
+            rebuild();
+            return;
+        }
+        String message = commit.getMessage();
+        HashMap<File, ByteArrayOutputStream> buckets = new HashMap<>();
+        writeRecord(buckets.computeIfAbsent(bucket(MESSAGE_INDEX_DIR, message),
+                k -> new ByteArrayOutputStream()), message, commit.getUid());
+        for (String trigram : trigrams(message)) {
+            writeRecord(buckets.computeIfAbsent(bucket(TRIGRAM_INDEX_DIR, trigram),
+                    k -> new ByteArrayOutputStream()), trigram, commit.getUid());
+        }
+        for (Map.Entry<File, ByteArrayOutputStream> item : buckets.entrySet()) {
+            append(item.getKey(), item.getValue().toByteArray());
+        }
+    }
+
+    /** @return uids of the commits whose message is exactly MESSAGE, sorted. */
+    public static TreeSet<String> find(String message) {
+        ensureBuilt();
+        return probe(MESSAGE_INDEX_DIR, message);
+    }
+
+    /**
+     * Find the commits whose message contains TEXT, ignoring case.
+     * Candidates are the commits holding every trigram of TEXT, each then
+     * checked against its message; a TEXT shorter than a trigram is checked
+     * against every commit.
+     * @return matching commit uids, sorted
+     */
+    public static TreeSet<String> grep(String text) {
+        ensureBuilt();
+        TreeSet<String> candidates = null;
+        for (String trigram : trigrams(text)) {
+            TreeSet<String> postings = probe(TRIGRAM_INDEX_DIR, trigram);
+            if (candidates == null) {
+                candidates = postings;
+            } else {
+                candidates.retainAll(postings);
+            }
+        }
+        if (candidates == null) {
+            candidates = new TreeSet<>(CommitIndex.uids());
+        }
+        String needle = text.toLowerCase(Locale.ROOT);
+        candidates.removeIf(uid -> !Commit.getCommit(uid).getMessage()
+                .toLowerCase(Locale.ROOT).contains(needle));
+        return candidates;
+    }
+
+    /** Recreate both indexes from every indexed commit. */
+    public static void rebuild() {
+        HashMap<File, ByteArrayOutputStream> buckets = new HashMap<>();
+        for (String uid : CommitIndex.uids()) {
+            String message = Commit.getCommit(uid).getMessage();
+            writeRecord(buckets.computeIfAbsent(bucket(MESSAGE_INDEX_DIR, message),
+                    k -> new ByteArrayOutputStream()), message, uid);
+            for (String trigram : trigrams(message)) {
+                writeRecord(buckets.computeIfAbsent(bucket(TRIGRAM_INDEX_DIR, trigram),
+                        k -> new ByteArrayOutputStream()), trigram, uid);
+            }
+        }
+        if (WORD_INDEX_DIR.exists()) {
+            for (String name : Objects.requireNonNull(plainFilenamesIn(WORD_INDEX_DIR))) {
+                join(WORD_INDEX_DIR, name).delete();
+            }
+            WORD_INDEX_DIR.delete();
+        }
+        for (File dir : new File[] {MESSAGE_INDEX_DIR, TRIGRAM_INDEX_DIR}) {
+            if (dir.exists()) {
+                for (String name : Objects.requireNonNull(plainFilenamesIn(dir))) {
+                    join(dir, name).delete();
+                }
+            } else {
+                FileUtils.makeDir(dir);
+            }
+        }
+        for (Map.Entry<File, ByteArrayOutputStream> item : buckets.entrySet()) {
+            FileUtils.writeAtomic(item.getKey(), (Object) item.getValue().toByteArray());
+        }
+    }
+
+    /** @return the distinct trigrams of TEXT in lower case, in order of appearance. */
+    static Set<String> trigrams(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= lower.length(); i += 1) {
+            trigrams.add(lower.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static void ensureBuilt() {
+        if (!MESSAGE_INDEX_DIR.exists() || !TRIGRAM_INDEX_DIR.exists()) {
+            rebuild();
+        }
+    }
+
+    private static TreeSet<String> probe(File dir, String key) {
+        TreeSet<String> uids = new TreeSet<>();
+        File bucket = bucket(dir, key);
+        if (!bucket.exists()) {
+            return uids;
+        }
+        byte[] hash = fromHex(sha1(key));
+        byte[] records = readContents(bucket);
+        for (int i = 0; i + RECORD_SIZE <= records.length; i += RECORD_SIZE) {
+            if (Arrays.equals(records, i, i + UID_BYTES, hash, 0, UID_BYTES)) {
+                uids.add(toHex(Arrays.copyOfRange(records, i + UID_BYTES, i + RECORD_SIZE)));
+            }
+        }
+        return uids;
+    }
+
+    /** Append RECORDS to BUCKET, over a record cut short by a crash if there is one. */
+    private static void append(File bucket, byte[] records) {
+        try (FileChannel out = FileChannel.open(bucket.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            long size = out.size();
+            out.position(size - size % RECORD_SIZE);
+            out.write(ByteBuffer.wrap(records));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.markUnsynced(bucket);
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, String key, String uid) {
+        out.writeBytes(fromHex(sha1(key)));
+        out.writeBytes(fromHex(uid));
+    }
+
+    private static File bucket(File dir, String key) {
+        return join(dir, sha1(key).substring(0, 2));
+    }
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/**
+ * Conversion of a repository whose blob uids hash the file name along with the
+ * content, BlobStore.NAMED_FORMAT, to CONTENT_FORMAT, where files of equal
+ * content share one blob.
+ * Every blob is stored again under its new uid, then every tree and, parents
+ * first, every commit is copied onto the new uids. The new branch heads and
+ * stage area are written to MIGRATION_FILE as
+ *     branch UID NAME
+ *     staged UID PATH
+ * lines before the journaled step that applies them, switches the format and
+ * collects the old objects as garbage.
+ *
+ * @author PainJoker
+ */
+public class Migration {
+    /** gitlet migrate handler. */
+    public static void migrate() {
+        if (BlobStore.format() >= BlobStore.CONTENT_FORMAT) {
+            throw error("The repository already uses the current format.");
+        }
+        int count = CommitGraph.size();
+        List<String> commits = new ArrayList<>();
+        Set<String> trees = new HashSet<>();
+        Set<String> blobs = new HashSet<>();
+        for (int i = 0; i < count; i += 1) {
+            String uid = CommitGraph.uidAt(i);
+            commits.add(uid);
+            Tree.collect(Commit.getCommit(uid).getTreeUid(), trees, blobs);
+        }
+        TreeMap<String, String> staged = BufferManager.getStaged();
+        blobs.addAll(staged.values());
+        Map<String, String> newBlobs = rewriteBlobs(new ArrayList<>(blobs));
+
+        Map<String, String> newTrees = new HashMap<>();
+        Map<String, String> newCommits = new HashMap<>();
+        newCommits.put(Commit.EMPTY_PARENT, Commit.EMPTY_PARENT);
+        for (String uid : commits) {
+            Commit commit = Commit.getCommit(uid);
+            Commit copy = new Commit(commit, newCommits.get(commit.getParentUid()),
+                    newCommits.get(commit.getSecondParentUid()),
+                    Tree.rewrite(commit.getTreeUid(), newBlobs, newTrees));
+            copy.store();
+            newCommits.put(uid, copy.getUid());
+        }
+
+        StringBuilder plan = new StringBuilder();
+        for (String branch : BranchManager.getBranches()) {
+            plan.append("branch ").append(newCommits.get(BranchManager.getCommitUid(branch)))
+                    .append(" ").append(branch).append("\n");
+        }
+        for (Map.Entry<String, String> entry : staged.entrySet()) {
+            plan.append("staged ").append(newBlobs.get(entry.getValue()))
+                    .append(" ").append(entry.getKey()).append("\n");
+        }
+        FileUtils.writeAtomic(MIGRATION_FILE, plan.toString());
+        Journal.begin(Journal.MIGRATE);
+        complete();
+        Journal.end();
+        System.out.println("Migrated " + commits.size() + " commits, " + trees.size()
+                + " trees and " + blobs.size() + " blobs, now "
+                + new HashSet<>(newBlobs.values()).size() + " blobs.");
+    }
+
+    /**
+     * Point the branches and the stage area to the copies recorded in
+     * MIGRATION_FILE and switch the format, if not done yet, then remove
+     * every object no branch reaches any more.
+     */
+    static void complete() {
+        if (MIGRATION_FILE.exists()) {
+            TreeMap<String, String> staged = new TreeMap<>();
+            for (String line : readContentsAsString(MIGRATION_FILE).split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(" ", 3);
+                if (fields[0].equals("branch")) {
+                    BranchManager.moveBranch(fields[2], fields[1]);
+                } else {
+                    staged.put(fields[2], fields[1]);
+                }
+            }
+            BufferManager.setArea(staged, BufferManager.getRemoved());
+            Config.set(BlobStore.FORMAT, Integer.toString(BlobStore.CONTENT_FORMAT));
+            StatCache.clear();
+            FileUtils.sync();
+            MIGRATION_FILE.delete();
+        }
+        GarbageCollector.prune();
+    }
+
+    /**
+     * Store every blob of UIDS under the hash of its content alone, once per
+     * distinct content. Contents only the stage area holds stay staged.
+     * @return mapping between the old and the new blob uids
+     */
+    private static Map<String, String> rewriteBlobs(List<String> uids) {
+        List<String> hashes = Workers.map(uids, BlobStore::contentHash);
+        Map<String, String> newUids = new HashMap<>();
+        Map<String, String> sources = new HashMap<>();
+        Set<String> committed = new HashSet<>();
+        for (int i = 0; i < uids.size(); i += 1) {
+            newUids.put(uids.get(i), hashes.get(i));
+            sources.putIfAbsent(hashes.get(i), uids.get(i));
+            if (!join(STAGED_DIR, uids.get(i)).exists()) {
+                committed.add(hashes.get(i));
+            }
+        }
+        Workers.map(new ArrayList<>(sources.keySet()), uid -> {
+            File target = join(committed.contains(uid) ? BLOBS_DIR : STAGED_DIR, uid);
+            if (!BlobStore.contains(uid) && !target.exists()) {
+                try (InputStream in = BlobStore.open(sources.get(uid))) {
+                    BlobStore.write(in, target);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e.getMessage());
+                }
+            }
+            return uid;
+        });
+        return newUids;
+    }
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static gitlet.Utils.UID_LENGTH;
+
+/**
+ * The 20-byte SHA-1 uid of a stored object, held as two longs and an int
+ * instead of a 40-char hex String, so that the uids kept by cached trees
+ * cost a fraction of the memory and compare without walking characters.
+ *
+ * @author PainJoker
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+    /** Number of raw bytes of a uid. */
+    public static final int BYTES = UID_LENGTH / 2;
+
+    private final long high;
+    private final long middle;
+    private final int low;
+
+    private ObjectId(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    /** @return the id of the hex uid HEX. */
+    public static ObjectId fromHex(String hex) {
+        if (hex.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("Not a full uid: " + hex);
+        }
+        return new ObjectId(Long.parseUnsignedLong(hex.substring(0, 16), 16),
+                Long.parseUnsignedLong(hex.substring(16, 32), 16),
+                Integer.parseUnsignedInt(hex.substring(32), 16));
+    }
+
+    /** @return the id read as BYTES raw bytes from IN. */
+    public static ObjectId read(DataInput in) throws IOException {
+        return new ObjectId(in.readLong(), in.readLong(), in.readInt());
+    }
+
+    /** Write the BYTES raw bytes of this id to OUT. */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(high);
+        out.writeLong(middle);
+        out.writeInt(low);
+    }
+
+    /** @return the 40-char hex form of this id. */
+    public String toHex() {
+        char[] hex = new char[UID_LENGTH];
+        putHex(hex, 0, high, 16);
+        putHex(hex, 16, middle, 16);
+        putHex(hex, 32, low, 8);
+        return new String(hex);
+    }
+
+    private static void putHex(char[] hex, int start, long value, int digits) {
+        for (int i = start + digits - 1; i >= start; i -= 1) {
+            hex[i] = Character.forDigit((int) (value & 0xf), 16);
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId id = (ObjectId) other;
+        return high == id.high && middle == id.middle && low == id.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) high;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(high, other.high);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(middle, other.middle);
+        }
+        return cmp != 0 ? cmp : Integer.compareUnsigned(low, other.low);
+    }
+}
@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static gitlet.Repository.PACK_FILE;
+import static gitlet.Repository.PACK_INDEX_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * Read-only, memory mapped view of the repository pack.
+ * The pack file starts with PACK_MAGIC and PACK_VERSION, followed by
+ * one entry per object:
+ *     type(1) [base uid(20), DELTA only] length(4) stored length(4) deflated data
+ * The index file starts with INDEX_MAGIC and the object count, followed by
+ * the sorted raw uids and then the pack offsets of their entries (8 bytes each).
+ *
+ * @author PainJoker
+ */
+public class PackReader {
+    static final int COMMIT = 1;
+    static final int BLOB = 2;
+    static final int DELTA = 3;
+    static final int TREE = 4;
+
+    static final int PACK_MAGIC = 0x47504b31;
+    static final int PACK_VERSION = 1;
+    static final int INDEX_MAGIC = 0x47494431;
+    static final int HEADER_SIZE = 8;
+    static final int ENTRY_SIZE = UID_LENGTH / 2;
+
+    private static MappedByteBuffer pack;
+    private static MappedByteBuffer index;
+    private static volatile int count = -1;
+
+    /** @return true if the pack holds the object UID. */
+    public static boolean contains(String uid) {
+        return find(uid) >= 0;
+    }
+
+    /** @return uids of all packed objects of TYPE, in sorted order. */
+    public static List<String> uids(int type) {
+        List<String> result = new ArrayList<>();
+        load();
+        for (int i = 0; i < count; i += 1) {
+            if (typeAt(offsetAt(i)) == type) {
+                result.add(uidAt(i));
+            }
+        }
+        return result;
+    }
+
+    /** @return uids of all packed objects, in sorted order. */
+    public static List<String> uids() {
+        List<String> result = new ArrayList<>();
+        load();
+        for (int i = 0; i < count; i += 1) {
+            result.add(uidAt(i));
+        }
+        return result;
+    }
+
+    /**
+     * Type of the object UID as it was stored, deltas resolving to their base type.
+     * @return COMMIT, TREE or BLOB, or 0 if the object is not packed
+     */
+    public static int type(String uid) {
+        int i = find(uid);
+        if (i < 0) {
+            return 0;
+        }
+        long offset = offsetAt(i);
+        while (typeAt(offset) == DELTA) {
+            offset = offsetAt(find(baseAt(offset)));
+        }
+        return typeAt(offset);
+    }
+
+    /**
+     * Read the full content of the packed object UID, applying deltas.
+     * @return content of the object, or null if it is not packed
+     */
+    public static byte[] read(String uid) {
+        int i = find(uid);
+        if (i < 0) {
+            return null;
+        }
+        long offset = offsetAt(i);
+        if (typeAt(offset) == DELTA) {
+            return Delta.apply(read(baseAt(offset)), inflate(offset));
+        }
+        return inflate(offset);
+    }
+
+    /** @return bytes taken by the object UID in the pack and its index, or 0 if it is not packed. */
+    public static long storedSize(String uid) {
+        int i = find(uid);
+        if (i < 0) {
+            return 0;
+        }
+        long offset = offsetAt(i);
+        int header = 1 + (typeAt(offset) == DELTA ? ENTRY_SIZE : 0);
+        return header + 8 + pack.getInt((int) offset + header + 4) + ENTRY_SIZE + 8;
+    }
+
+    /** Forget the mapped files so that the next access sees a rewritten pack. */
+    static void close() {
+        pack = null;
+        index = null;
+        count = -1;
+    }
+
+    private static int find(String uid) {
+        load();
+        byte[] target = fromHex(uid);
+        byte[] probe = new byte[ENTRY_SIZE];
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(HEADER_SIZE + mid * ENTRY_SIZE, probe);
+            int cmp = Arrays.compareUnsigned(probe, target);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static String uidAt(int i) {
+        byte[] raw = new byte[ENTRY_SIZE];
+        index.get(HEADER_SIZE + i * ENTRY_SIZE, raw);
+        return toHex(raw);
+    }
+
+    private static long offsetAt(int i) {
+        return index.getLong(HEADER_SIZE + count * ENTRY_SIZE + i * 8);
+    }
+
+    private static int typeAt(long offset) {
+        return pack.get((int) offset);
+    }
+
+    private static String baseAt(long offset) {
+        byte[] raw = new byte[ENTRY_SIZE];
+        pack.get((int) offset + 1, raw);
+        return toHex(raw);
+    }
+
+    private static byte[] inflate(long offset) {
+        int position = (int) offset + 1;
+        if (typeAt(offset) == DELTA) {
+            position += ENTRY_SIZE;
+        }
+        byte[] result = new byte[pack.getInt(position)];
+        int stored = pack.getInt(position + 4);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(pack.slice(position + 8, stored));
+            int length = 0;
+            while (!inflater.finished() && length < result.length) {
+                length += inflater.inflate(result, length, result.length - length);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt pack entry: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static synchronized void load() {
+        if (count >= 0) {
+            return;
+        }
+        if (!PACK_FILE.exists() || !PACK_INDEX_FILE.exists()) {
+            count = 0;
+            return;
+        }
+        pack = map(PACK_FILE.getPath());
+        index = map(PACK_INDEX_FILE.getPath());
+        if (pack.getInt(0) != PACK_MAGIC || index.getInt(0) != INDEX_MAGIC) {
+            throw new IllegalArgumentException("Not a gitlet pack.");
+        }
+        count = index.getInt(4);
+    }
+
+    private static MappedByteBuffer map(String path) {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+
+import static gitlet.PackReader.*;
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/**
+ * Fold every loose commit, tree and blob and the current pack into a new pack.
+ * Versions of the same file are stored newest first, each older version
+ * as a delta against the next newer one, so that a history of small edits
+ * costs little more than its latest version. The versions are found from the
+ * files each commit changes over its first parent, so the history is walked
+ * without listing every file of every commit.
+ *
+ * @author PainJoker
+ */
+public class PackWriter {
+    /** Deltas are never chained deeper than this. */
+    private static final int MAX_DEPTH = 10;
+
+    /** The new pack and index, until they replace the current ones. */
+    private static final File PACK_TEMP = join(PACK_DIR, "pack.tmp");
+    private static final File INDEX_TEMP = join(PACK_DIR, "idx.tmp");
+
+    private final DataOutputStream out;
+    private final Set<String> keep;
+    private final TreeMap<String, Long> offsets = new TreeMap<>();
+    private long position;
+
+    private PackWriter(DataOutputStream out, Set<String> keep) {
+        this.out = out;
+        this.keep = keep;
+    }
+
+    /** gitlet repack handler. */
+    public static void repack() {
+        Set<String> packed = write(null);
+        Journal.begin(Journal.REPACK);
+        completeRepack();
+        Journal.end();
+        for (String uid : packed) {
+            join(COMMITS_DIR, uid).delete();
+            join(BLOBS_DIR, uid).delete();
+            join(TREES_DIR, uid).delete();
+        }
+    }
+
+    /**
+     * Write the new pack and its index next to the current ones,
+     * to be moved over them by completeRepack.
+     * @param keep uids of the objects to pack, or null to pack every object
+     * @return uids of the packed objects
+     */
+    static Set<String> write(Set<String> keep) {
+        if (!PACK_DIR.exists()) {
+            FileUtils.makeDir(PACK_DIR);
+        }
+        PackWriter writer;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(PACK_TEMP.toPath())))) {
+            writer = new PackWriter(out, keep);
+            writer.writeAll();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        writer.writeIndex(INDEX_TEMP);
+        FileUtils.markUnsynced(PACK_TEMP);
+        FileUtils.markUnsynced(INDEX_TEMP);
+        return writer.offsets.keySet();
+    }
+
+    /** Replace the pack and its index with the new ones, if not done yet. */
+    static void completeRepack() {
+        PackReader.close();
+        if (PACK_TEMP.exists()) {
+            FileUtils.moveAtomic(PACK_TEMP, PACK_FILE);
+        }
+        if (INDEX_TEMP.exists()) {
+            FileUtils.moveAtomic(INDEX_TEMP, PACK_INDEX_FILE);
+        }
+    }
+
+    private void writeAll() throws IOException {
+        List<String> commitUids = historyOrder();
+        LinkedHashMap<String, LinkedHashSet<String>> versions = new LinkedHashMap<>();
+        out.writeInt(PACK_MAGIC);
+        out.writeInt(PACK_VERSION);
+        position = HEADER_SIZE;
+        for (String uid : commitUids) {
+            if (!kept(uid)) {
+                continue;
+            }
+            byte[] content = Commit.readContents(uid);
+            writeEntry(uid, COMMIT, null, content);
+            Commit commit = CommitCodec.decode(uid, content);
+            String parentTree = commit.isInitialCommit()
+                    ? null : Commit.getCommit(commit.getParentUid()).getTreeUid();
+            for (Map.Entry<String, String> file
+                    : Tree.changes(parentTree, commit.getTreeUid()).entrySet()) {
+                if (file.getValue() != null) {
+                    versions.computeIfAbsent(file.getKey(), k -> new LinkedHashSet<>())
+                            .add(file.getValue());
+                }
+            }
+        }
+        for (String uid : Objects.requireNonNull(plainFilenamesIn(TREES_DIR))) {
+            if (!kept(uid)) {
+                continue;
+            }
+            writeEntry(uid, TREE, null, Tree.readContents(uid));
+        }
+        for (LinkedHashSet<String> fileVersions : versions.values()) {
+            writeVersions(fileVersions);
+        }
+        for (String uid : Objects.requireNonNull(plainFilenamesIn(BLOBS_DIR))) {
+            if (!offsets.containsKey(uid) && kept(uid)) {
+                writeEntry(uid, BLOB, null, BlobStore.readContents(uid));
+            }
+        }
+        for (String uid : PackReader.uids()) {
+            if (!offsets.containsKey(uid) && kept(uid)) {
+                writeEntry(uid, PackReader.type(uid), null, PackReader.read(uid));
+            }
+        }
+    }
+
+    private boolean kept(String uid) {
+        return keep == null || keep.contains(uid);
+    }
+
+    /** Write the versions of one file, newest first, as a chain of deltas. */
+    private void writeVersions(LinkedHashSet<String> fileVersions) throws IOException {
+        String baseUid = null;
+        byte[] base = null;
+        int depth = 0;
+        for (String uid : fileVersions) {
+            if (offsets.containsKey(uid)) {
+                continue;
+            }
+            byte[] content = BlobStore.readContents(uid);
+            byte[] delta = base == null || depth >= MAX_DEPTH ? null : Delta.create(base, content);
+            if (delta != null && delta.length < content.length / 2) {
+                writeEntry(uid, DELTA, baseUid, delta);
+                depth += 1;
+            } else {
+                writeEntry(uid, BLOB, null, content);
+                depth = 0;
+            }
+            baseUid = uid;
+            base = content;
+        }
+    }
+
+    private void writeEntry(String uid, int type, String baseUid, byte[] content)
+            throws IOException {
+        byte[] stored = deflate(content);
+        offsets.put(uid, position);
+        out.writeByte(type);
+        position += 1;
+        if (baseUid != null) {
+            out.write(fromHex(baseUid));
+            position += ENTRY_SIZE;
+        }
+        out.writeInt(content.length);
+        out.writeInt(stored.length);
+        out.write(stored);
+        position += 8 + stored.length;
+    }
+
+    private void writeIndex(File indexFile) {
+        try (DataOutputStream index = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(indexFile.toPath())))) {
+            index.writeInt(INDEX_MAGIC);
+            index.writeInt(offsets.size());
+            for (String uid : offsets.keySet()) {
+                index.write(fromHex(uid));
+            }
+            for (long offset : offsets.values()) {
+                index.writeLong(offset);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Every indexed commit, those reachable from a branch first and
+     * in breadth-first order from the branch heads, so newer commits come first.
+     */
+    private static List<String> historyOrder() {
+        LinkedHashSet<String> ordered = new LinkedHashSet<>();
+        boolean[] visited = new boolean[CommitGraph.size()];
+        Queue<Integer> queue = new LinkedList<>();
+        for (String branch : BranchManager.getBranches()) {
+            queue.add(CommitGraph.indexOf(BranchManager.getCommitUid(branch)));
+        }
+        while (!queue.isEmpty()) {
+            int position = queue.poll();
+            if (position < 0 || visited[position]) {
+                continue;
+            }
+            visited[position] = true;
+            ordered.add(CommitGraph.uidAt(position));
+            queue.add(CommitGraph.parentOf(position));
+            queue.add(CommitGraph.secondParentOf(position));
+        }
+        ordered.addAll(CommitIndex.uids());
+        return new ArrayList<>(ordered);
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, content.length + content.length / 100 + 64)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+}
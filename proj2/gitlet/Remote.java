@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Utils.*;
+
+/**
+ * Exchange of commits with other repositories on the same machine.
+ * A remote is a name for the .gitlet directory of another repository, kept in
+ * the "remote.NAME.path" setting. Fetch and push start gitlet in the directory of
+ * the remote, running upload-pack or receive-pack, and talk to it over its
+ * standard streams, so the remote repository is only ever read and written by
+ * a gitlet process of its own, under its own lock:
+ *     remote -> local   true, blob format(4), ref count(4), (branch, uid) per ref
+ *                       or false, error message
+ * then for upload-pack
+ *     local -> remote   wanted uid, have count(4), had uids
+ *     remote -> local   bundle
+ * and for receive-pack
+ *     local -> remote   branch, old uid or "", new uid, bundle
+ *     remote -> local   true, or false and error message
+ * The bundle only holds what the receiver lacks, as told by the branch heads
+ * it has; see Bundle. Repositories of different BlobStore formats name the
+ * same files by different uids, so they refuse to exchange commits.
+ *
+ * @author PainJoker
+ */
+public class Remote {
+    /** Commands the remote side of a transfer runs. */
+    public static final Set<String> SERVER_COMMANDS = Set.of("upload-pack", "receive-pack");
+
+    /** add-remote [remote name] [name of remote directory]/.gitlet handler. */
+    public static void add(String name, String path) {
+        if (Config.get(setting(name), null) != null) {
+            throw error("A remote with that name already exists.");
+        }
+        Config.set(setting(name), path.replace("/", File.separator));
+    }
+
+    /** rm-remote [remote name] handler. */
+    public static void remove(String name) {
+        if (Config.get(setting(name), null) == null) {
+            throw error("A remote with that name does not exist.");
+        }
+        Config.remove(setting(name));
+    }
+
+    /**
+     * fetch [remote name] [remote branch name] handler.
+     * Copies the commits of the remote branch missing here and points the
+     * branch [remote name]/[remote branch name] to its head.
+     */
+    public static void fetch(String name, String branch) {
+        Connection remote = connect(name, "upload-pack");
+        try {
+            String want = remote.refs.get(branch);
+            if (want == null) {
+                throw error("That remote does not have that branch.");
+            }
+            List<String> haves = new ArrayList<>();
+            for (String local : BranchManager.getBranches()) {
+                haves.add(BranchManager.getCommitUid(local));
+            }
+            remote.out.writeUTF(want);
+            remote.out.writeInt(haves.size());
+            for (String have : haves) {
+                remote.out.writeUTF(have);
+            }
+            remote.out.flush();
+            Bundle.read(remote.in);
+            FileUtils.sync();
+            BranchManager.moveBranch(name + "/" + branch, want);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            remote.close();
+        }
+    }
+
+    /**
+     * push [remote name] [remote branch name] handler.
+     * Copies the commits of the current branch missing in the remote and
+     * moves the remote branch forward to the current head.
+     */
+    public static void push(String name, String branch) {
+        Connection remote = connect(name, "receive-pack");
+        try {
+            String head = BranchManager.getHeadCommitUid();
+            String old = remote.refs.get(branch);
+            if (old != null && !isAncestor(old, head)) {
+                throw error("Please pull down remote changes before pushing.");
+            }
+            remote.out.writeUTF(branch);
+            remote.out.writeUTF(old == null ? "" : old);
+            remote.out.writeUTF(head);
+            Bundle.write(remote.out, head, remote.refs.values());
+            readStatus(remote.in);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            remote.close();
+        }
+    }
+
+    /** pull [remote name] [remote branch name] handler. */
+    public static void pull(String name, String branch) {
+        fetch(name, branch);
+        Repository.merge(name + "/" + branch);
+    }
+
+    /** Serve the remote side of a fetch, on the standard streams. */
+    public static void uploadPack() {
+        DataOutputStream out = standardOutput();
+        try {
+            writeRefs(out);
+            DataInputStream in = standardInput();
+            String want = in.readUTF();
+            List<String> haves = new ArrayList<>();
+            for (int count = in.readInt(); count > 0; count -= 1) {
+                haves.add(in.readUTF());
+            }
+            Bundle.write(out, want, haves);
+        } catch (EOFException e) {
+            // The client gave up after reading the refs.
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Serve the remote side of a push, on the standard streams.
+     * A branch that is checked out here is reset to the pushed head,
+     * the others are only moved.
+     */
+    public static void receivePack() {
+        DataOutputStream out = standardOutput();
+        try {
+            writeRefs(out);
+            DataInputStream in = standardInput();
+            String branch = in.readUTF();
+            String old = in.readUTF();
+            String head = in.readUTF();
+            try {
+                Bundle.read(in);
+                FileUtils.sync();
+                String current = BranchManager.containsBranch(branch)
+                        ? BranchManager.getCommitUid(branch) : "";
+                if (!current.equals(old)) {
+                    throw error("Please pull down remote changes before pushing.");
+                }
+                if (branch.equals(BranchManager.getHeadBranch())) {
+                    Repository.reset(head);
+                } else {
+                    BranchManager.moveBranch(branch, head);
+                }
+                out.writeBoolean(true);
+            } catch (GitletException e) {
+                out.writeBoolean(false);
+                out.writeUTF(e.getMessage());
+            }
+            out.flush();
+        } catch (EOFException e) {
+            // The client gave up after reading the refs.
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String setting(String name) {
+        return "remote." + name + ".path";
+    }
+
+    private static boolean isAncestor(String ancestor, String descendant) {
+        int i = CommitGraph.indexOf(ancestor);
+        return i >= 0 && CommitGraph.isAncestor(i, CommitGraph.indexOf(descendant));
+    }
+
+    private static void writeRefs(DataOutputStream out) throws IOException {
+        out.writeBoolean(true);
+        out.writeInt(BlobStore.format());
+        TreeMap<String, String> refs = new TreeMap<>();
+        for (String branch : BranchManager.getBranches()) {
+            refs.put(branch, BranchManager.getCommitUid(branch));
+        }
+        out.writeInt(refs.size());
+        for (String branch : refs.keySet()) {
+            out.writeUTF(branch);
+            out.writeUTF(refs.get(branch));
+        }
+        out.flush();
+    }
+
+    private static void readStatus(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            throw error(in.readUTF());
+        }
+    }
+
+    private static DataOutputStream standardOutput() {
+        return new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out)));
+    }
+
+    private static DataInputStream standardInput() {
+        return new DataInputStream(new BufferedInputStream(
+                new FileInputStream(FileDescriptor.in)));
+    }
+
+    /**
+     * Start COMMAND in the repository of the remote NAME and read its refs.
+     * The started gitlet runs with the same java and class path as this one.
+     */
+    private static Connection connect(String name, String command) {
+        String path = Config.get(setting(name), null);
+        if (path == null) {
+            throw error("A remote with that name does not exist.");
+        }
+        File gitletDir = new File(path);
+        if (!gitletDir.isAbsolute()) {
+            gitletDir = join(CWD, path);
+        }
+        if (!gitletDir.isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"), Main.class.getName(), command);
+        builder.directory(gitletDir.getAbsoluteFile().getParentFile());
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            return new Connection(builder.start());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** A gitlet process serving a remote repository, and the refs it announced. */
+    private static class Connection {
+        private final Process process;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final TreeMap<String, String> refs = new TreeMap<>();
+
+        Connection(Process process) throws IOException {
+            this.process = process;
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            try {
+                readStatus(in);
+                if (in.readInt() != BlobStore.format()) {
+                    throw error("The remote repository uses another object format; "
+                            + "migrate the older one first.");
+                }
+                for (int count = in.readInt(); count > 0; count -= 1) {
+                    refs.put(in.readUTF(), in.readUTF());
+                }
+            } catch (GitletException | IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void close() {
+            try {
+                out.close();
+                in.close();
+                process.waitFor();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Repository.LOCK_FILE;
+
+/**
+ * Exclusive lock held by a command that changes the repository, so that
+ * concurrent gitlet processes apply their changes one after another.
+ * Commands that only read take no lock: every file they read is replaced
+ * atomically, and objects, being content addressed, never change once written.
+ *
+ * @author PainJoker
+ */
+public class RepoLock implements AutoCloseable {
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private RepoLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Wait until no other process holds the lock, take it and complete
+     * any operation left unfinished by an interrupted command.
+     * Outside an initialized repository, the returned lock holds nothing.
+     */
+    public static RepoLock acquire() {
+        return acquire(() -> { });
+    }
+
+    /**
+     * Take the lock as acquire() does, running ONLOCKED once it is held and
+     * before any interrupted operation is completed, so that a process
+     * caching the repository can first read what other processes changed.
+     */
+    public static RepoLock acquire(Runnable onLocked) {
+        if (!GITLET_DIR.exists()) {
+            return new RepoLock(null, null);
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(LOCK_FILE.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            RepoLock held = new RepoLock(channel, channel.lock());
+            try {
+                onLocked.run();
+                Journal.recover();
+            } catch (RuntimeException e) {
+                held.close();
+                throw e;
+            }
+            return held;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.release();
+        } catch (IOException e) {
+            // Closing the channel releases the lock as well.
+        }
+        closeQuietly(channel);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Nothing left to release.
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package gitlet;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
-import static gitlet.Commit.EMPTY_PARENT;
 import static gitlet.Utils.*;
 import static gitlet.Commit.getCommit;
 
@@ -24,61 +25,154 @@ public class Repository {
      *     |    |   |--staged
      *     |    |   |--(stored Blobs)
      *     |    |--commits
+     *     |    |--trees
+     *     |    |--info
+     *     |    |   |--commit-index(file)
+     *     |    |   |--commit-graph(file)
+     *     |    |   |--messages(message index buckets)
+     *     |    |   |--trigrams(trigram index buckets)
+     *     |    |--pack
+     *     |    |   |--pack(file)
+     *     |    |   |--idx(file)
      *     |    |--stats
      *     |    |   |--staged(file)
      *     |    |   |--remove(file)
+     *     |    |   |--index(file)
      *     |--refs
-     *     |    |--branches(file)
-     *     |    |--(stored branches)
+     *     |    |--packed-refs(file, every branch and its commit)
+     *     |    |--log(file, changes of branches since packed-refs was written)
      *     |--HEAD(file)
+     *     |--config(file, settings of the repository)
+     *     |--journal(file, while an operation is in progress)
+     *     |--migration(file, while the objects are converted to a new format)
+     *     |--lock(file, locked by the command changing the repository)
+     *     |--daemon.sock(socket, while a daemon serves the repository)
      */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
     public static final File OBJECTS_DIR = join(GITLET_DIR, "objects");
     public static final File COMMITS_DIR = join(OBJECTS_DIR, "commits");
+    public static final File TREES_DIR = join(OBJECTS_DIR, "trees");
     public static final File BLOBS_DIR = join(OBJECTS_DIR, "blobs");
     public static final File STAGED_DIR = join(BLOBS_DIR, "staged");
+    public static final File INFO_DIR = join(OBJECTS_DIR, "info");
+    public static final File COMMIT_INDEX_FILE = join(INFO_DIR, "commit-index");
+    public static final File COMMIT_GRAPH_FILE = join(INFO_DIR, "commit-graph");
+    public static final File CHANGED_PATHS_FILE = join(INFO_DIR, "changed-paths");
+    public static final File MESSAGE_INDEX_DIR = join(INFO_DIR, "messages");
+    public static final File TRIGRAM_INDEX_DIR = join(INFO_DIR, "trigrams");
+    /** Word index of repositories made before the trigram index, removed on rebuild. */
+    public static final File WORD_INDEX_DIR = join(INFO_DIR, "words");
+    public static final File PACK_DIR = join(OBJECTS_DIR, "pack");
+    public static final File PACK_FILE = join(PACK_DIR, "pack");
+    public static final File PACK_INDEX_FILE = join(PACK_DIR, "idx");
     public static final File STATS_DIR = join(OBJECTS_DIR, "stats");
     public static final File STAGED_FILE = join(STATS_DIR, "staged");
     public static final File REMOVED_FILE = join(STATS_DIR, "removed");
+    public static final File STAT_CACHE_FILE = join(STATS_DIR, "index");
     public static final File REF_DIR = join(GITLET_DIR, "refs");
     public static final File HEAD_FILE = join(GITLET_DIR, "HEAD");
+    public static final File PACKED_REFS_FILE = join(REF_DIR, "packed-refs");
+    public static final File REF_LOG_FILE = join(REF_DIR, "log");
+    /** The branch set of repositories made before packed refs. */
     public static final File BRANCH_FILE = join(REF_DIR, "branches");
+    public static final File SOCKET_FILE = join(GITLET_DIR, "daemon.sock");
+    public static final File JOURNAL_FILE = join(GITLET_DIR, "journal");
+    public static final File LOCK_FILE = join(GITLET_DIR, "lock");
+    public static final File CONFIG_FILE = join(GITLET_DIR, "config");
+    public static final File MIGRATION_FILE = join(GITLET_DIR, "migration");
+
+    /** Size in chars of the buffer log output is collected in. */
+    private static final int LOG_BUFFER_SIZE = 1 << 16;
 
     public static void checkRepoInitialized() {
         if (!isInitialized()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw error("Not in an initialized Gitlet directory.");
         }
     }
 
     public static void init() {
         if (isInitialized()) {
-            System.out.println("A Gitlet version-control system already exists "
+            throw error("A Gitlet version-control system already exists "
                     + "in the current directory.");
-            System.exit(0);
         }
         createRepo();
+        Config.set(BlobStore.FORMAT, Integer.toString(BlobStore.CONTENT_FORMAT));
         firstCommit();
     }
 
     public static void add(String file) {
-        checkAddCondition(file);
-        Blob blob = new Blob(file);
-        if (isCurrentCommited(blob)) {
-            if (BufferManager.removedContainsFile(blob)) {
-                BufferManager.popRemoved(blob);
-            } else if (BufferManager.stagedContainsFile(blob)) {
-                BufferManager.unstage(blob);
+        add(List.of(file));
+    }
+
+    /**
+     * Stage every file named by PATHS, a directory standing for all files below it.
+     * Files are hashed and written on worker threads, and the stage area
+     * is read and written back only once.
+     */
+    public static void add(List<String> paths) {
+        List<String> files = expandPaths(paths);
+        List<Blob> blobs = Workers.map(files, Blob::new);
+        Commit head = BranchManager.getHeadCommit();
+        TreeMap<String, String> staged = BufferManager.getStaged();
+        TreeSet<String> removed = BufferManager.getRemoved();
+        List<Blob> toWrite = new ArrayList<>();
+        Set<String> writing = new HashSet<>();
+        Set<String> dropped = new HashSet<>();
+        for (Blob blob : blobs) {
+            String name = blob.getFileName();
+            String uid = blob.getUid();
+            boolean committed = uid.equals(head.getFile(name));
+            String previous = staged.get(name);
+            if (previous != null && (committed || !previous.equals(uid))) {
+                staged.remove(name);
+                dropped.add(previous);
+            }
+            removed.remove(name);
+            if (committed || uid.equals(previous)) {
+                continue;
+            }
+            staged.put(name, uid);
+            if (!isStored(blob) && writing.add(uid)) {
+                toWrite.add(blob);
+            }
+        }
+        dropped.removeAll(staged.values());
+        for (String uid : dropped) {
+            BufferManager.dropStaged(uid);
+        }
+        Workers.map(toWrite, blob -> {
+            BufferManager.stage(blob);
+            return blob;
+        });
+        BufferManager.setArea(staged, removed);
+        StatCache.save();
+    }
+
+    /**
+     * Resolve the operands of add to the working files they name.
+     * @return paths relative to CWD, sorted and without duplicates
+     */
+    private static List<String> expandPaths(List<String> paths) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        TreeSet<String> files = new TreeSet<>();
+        for (String path : paths) {
+            checkAddCondition(path);
+            Path start = root.resolve(path).normalize();
+            if (Files.isDirectory(start)) {
+                files.addAll(WorkingTree.files(relativeName(root, start)));
+            } else {
+                files.add(relativeName(root, start));
             }
-        } else if (isStored(blob)) {
-            BufferManager.addStage(blob);
-        } else {
-            BufferManager.stageWithOverride(blob);
         }
+        return new ArrayList<>(files);
+    }
+
+    private static String relativeName(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separator, Tree.SEPARATOR);
     }
 
     private static boolean isStored(Blob blob) {
-        return join(BLOBS_DIR, blob.getUid()).exists();
+        return BlobStore.contains(blob.getUid());
     }
 
     public static void commit(String message) {
@@ -101,16 +195,11 @@ public class Repository {
      */
     public static void checkoutFileInCommit(String commitUid, String fileName) {
         Commit targetCommit = getCommit(commitUid);
-        TreeMap<String, String> files = targetCommit.getFiles();
-        if (!files.containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        String fileUid = targetCommit.getFile(fileName);
+        if (fileUid == null) {
+            throw error("File does not exist in that commit.");
         }
-        String fileUid = files.get(fileName);
-        File blobPath = join(BLOBS_DIR, fileUid);
-        Blob blob = readObject(blobPath, Blob.class);
-        File currentFilePath = join(CWD, fileName);
-        writeContents(currentFilePath, blob.getContent());
+        BlobStore.release(fileUid, WorkingTree.create(fileName));
     }
 
     /**
@@ -121,42 +210,81 @@ public class Repository {
      */
     public static void checkoutBranch(String branchName) {
         checkBranchCondition(branchName);
-        Commit targetCommit = BranchManager.getBranchCommit(branchName);
-        clearCWD();
-        release(targetCommit);
-        BufferManager.clearArea();
-        BranchManager.checkout(branchName);
+        String targetUid = BranchManager.getCommitUid(branchName);
+        String fromUid = BranchManager.getHeadCommitUid();
+        Journal.begin(Journal.CHECKOUT, targetUid, fromUid, branchName);
+        completeCheckout(branchName, targetUid, fromUid);
+        Journal.end();
     }
 
-    public static void log() {
-        Commit commit = BranchManager.getHeadCommit();
-        while (!commit.isInitialCommit()) {
-            System.out.println(commit);
-            commit = getCommit(commit.getParentUid());
+    /**
+     * log handler: follow the first parents from the head commit.
+     * The walk runs on the commit graph and stops at the first commit older than
+     * the --since date or once the -n limit is reached; only printed commits are read.
+     * Limited to a path, the commits whose changed-path filter rules it out are
+     * passed over unread.
+     */
+    public static void log(LogOptions options) {
+        StringBuilder out = new StringBuilder(LOG_BUFFER_SIZE);
+        int printed = 0;
+        int position = CommitGraph.indexOf(BranchManager.getHeadCommitUid());
+        while (position >= 0 && printed < options.limit()
+                && CommitGraph.timestampOf(position) >= options.since()) {
+            if (options.path() == null || ChangedPaths.touches(position, options.path())) {
+                appendLogEntry(out, CommitGraph.uidAt(position), options);
+                printed += 1;
+            }
+            position = CommitGraph.parentOf(position);
         }
-        System.out.println(commit);
+        System.out.print(out);
     }
 
-    public static void globalLog() {
-        for (String commitUid : Objects.requireNonNull(plainFilenamesIn(COMMITS_DIR))) {
-            Commit commit = getCommit(commitUid);
-            System.out.println(commit);
+    /** global-log handler: every stored commit, in uid order. */
+    public static void globalLog(LogOptions options) {
+        StringBuilder out = new StringBuilder(LOG_BUFFER_SIZE);
+        int printed = 0;
+        for (String commitUid : CommitIndex.uids()) {
+            if (printed >= options.limit()) {
+                break;
+            }
+            int position = CommitGraph.indexOf(commitUid);
+            if (CommitGraph.timestampOf(position) >= options.since() && (options.path() == null
+                    || ChangedPaths.touches(position, options.path()))) {
+                appendLogEntry(out, commitUid, options);
+                printed += 1;
+            }
+        }
+        System.out.print(out);
+    }
+
+    /** Append the entry of commit UID, writing OUT through once it grows large. */
+    private static void appendLogEntry(StringBuilder out, String uid, LogOptions options) {
+        Commit commit = getCommit(uid);
+        if (options.oneline()) {
+            String message = commit.getMessage();
+            int end = message.indexOf('\n');
+            out.append(uid, 0, 7).append(' ')
+                    .append(end < 0 ? message : message.substring(0, end)).append('\n');
+        } else {
+            commit.appendLog(out);
+            out.append('\n');
+        }
+        if (out.length() >= LOG_BUFFER_SIZE) {
+            System.out.print(out);
+            out.setLength(0);
         }
     }
 
     public static void remove(String fileName) {
         TreeMap<String, String> staged = BufferManager.getStaged();
         Commit currentCommit = BranchManager.getHeadCommit();
-        TreeMap<String, String> files = currentCommit.getFiles();
-        if (!staged.containsKey(fileName) && !files.containsKey(fileName)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+        if (!staged.containsKey(fileName) && currentCommit.getFile(fileName) == null) {
+            throw error("No reason to remove the file.");
         } else if (staged.containsKey(fileName)) {
-            Blob blob = readObject(join(STAGED_DIR, fileName), Blob.class);
-            BufferManager.unstage(blob);
+            BufferManager.unstage(fileName);
         } else {
             BufferManager.addRemove(fileName);
-            restrictedDelete(new File(CWD, fileName));
+            WorkingTree.delete(fileName);
         }
     }
 
@@ -167,18 +295,21 @@ public class Repository {
      * @param message multiword message
      */
     public static void find(String message) {
-        boolean isFound = false;
-        for (String commitUid : Objects.requireNonNull(plainFilenamesIn(COMMITS_DIR))) {
-            Commit commit = getCommit(commitUid);
-            String commitMsg = commit.getMessage();
-            if (commitMsg.equals(message)) {
-                isFound = true;
-                System.out.println(commit.getUid());
-            }
-        }
-        if (!isFound) {
+        printFound(MessageIndex.find(message));
+    }
+
+    /** find --grep [text] handler: print the commits whose message contains TEXT. */
+    public static void grep(String text) {
+        printFound(MessageIndex.grep(text));
+    }
+
+    private static void printFound(Set<String> uids) {
+        if (uids.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
+        for (String uid : uids) {
+            System.out.println(uid);
+        }
     }
 
     /**
@@ -186,22 +317,18 @@ public class Repository {
      * @param branchName String
      */
     public static void attachBranch(String branchName) {
-        TreeSet<String> branches = BranchManager.getBranches();
-        if (branches.contains(branchName)) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        if (BranchManager.containsBranch(branchName)) {
+            throw error("A branch with that name already exists.");
         }
         BranchManager.createBranch(branchName);
     }
 
     public static void rmBranch(String branchName) {
-        if (!BranchManager.getBranches().contains(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (!BranchManager.containsBranch(branchName)) {
+            throw error("A branch with that name does not exist.");
         }
         if (BranchManager.getHeadBranch().equals(branchName)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw error("Cannot remove the current branch.");
         }
         BranchManager.deleteBranch(branchName);
     }
@@ -214,17 +341,133 @@ public class Repository {
         Commit targetCommit = getCommit(commitUid);
         checkUntrackedFiles();
         String currentBranch = BranchManager.getHeadBranch();
-        BranchManager.moveBranch(currentBranch, targetCommit.getUid());
-        clearCWD();
-        release(targetCommit);
-        BufferManager.clearArea();
+        String fromUid = BranchManager.getHeadCommitUid();
+        Journal.begin(Journal.CHECKOUT, targetCommit.getUid(), fromUid, currentBranch);
+        completeCheckout(currentBranch, targetCommit.getUid(), fromUid);
+        Journal.end();
+    }
+
+    /**
+     * diff handler, printing unified diffs of
+     *     diff                    the working files against the stage area
+     *     diff [commit]           the working files against a commit
+     *     diff [commit] [commit]  two commits
+     * Paths whose blob uids are equal are skipped without reading them,
+     * and the files left are diffed on worker threads.
+     * @param commits zero, one or two commit ids
+     */
+    public static void diff(String... commits) {
+        if (commits.length == 2) {
+            Commit from = getCommit(commits[0]);
+            Commit to = getCommit(commits[1]);
+            TreeSet<String> paths = Tree.diff(from.getTreeUid(), to.getTreeUid());
+            printDiffs(paths, from.getFiles(), to.getFiles(), false);
+            return;
+        }
+        TreeMap<String, String> index = indexFiles();
+        TreeMap<String, String> from = commits.length == 1
+                ? getCommit(commits[0]).getFiles() : index;
+        TreeSet<String> paths = new TreeSet<>(from.keySet());
+        paths.addAll(index.keySet());
+        TreeMap<String, String> working = new TreeMap<>();
+        for (String path : paths) {
+            String uid = StatCache.hash(path);
+            if (uid != null) {
+                working.put(path, uid);
+            }
+        }
+        StatCache.save();
+        printDiffs(paths, from, working, true);
+    }
+
+    /** diff --staged handler: the stage area against the head commit. */
+    public static void diffStaged() {
+        TreeMap<String, String> head = BranchManager.getHeadCommit().getFiles();
+        TreeMap<String, String> index = indexFiles();
+        TreeSet<String> paths = new TreeSet<>(head.keySet());
+        paths.addAll(index.keySet());
+        printDiffs(paths, head, index, false);
+    }
+
+    /** @return the files of the head commit with the stage area applied. */
+    private static TreeMap<String, String> indexFiles() {
+        TreeMap<String, String> files = BranchManager.getHeadCommit().getFiles();
+        files.putAll(BufferManager.getStaged());
+        files.keySet().removeAll(BufferManager.getRemoved());
+        return files;
+    }
+
+    /**
+     * Print the diffs of the PATHS whose uids differ between FROM and TO.
+     * @param working true if the contents of TO are the working files
+     */
+    private static void printDiffs(Set<String> paths, Map<String, String> from,
+                                   Map<String, String> to, boolean working) {
+        List<String> changed = new ArrayList<>();
+        for (String path : paths) {
+            if (!Objects.equals(from.get(path), to.get(path))) {
+                changed.add(path);
+            }
+        }
+        List<byte[]> diffs = Workers.map(changed, path -> {
+            String fromUid = from.get(path);
+            String toUid = to.get(path);
+            byte[] before = fromUid == null ? null : BlobStore.readContents(fromUid);
+            byte[] after = toUid == null ? null
+                    : working ? readContents(join(CWD, path)) : BlobStore.readContents(toUid);
+            return UnifiedDiff.format(path, before, after);
+        });
+        for (byte[] diff : diffs) {
+            System.out.write(diff, 0, diff.length);
+        }
+        System.out.flush();
+    }
+
+    /** Fold loose commits and blobs into the pack. */
+    public static void repack() {
+        PackWriter.repack();
+    }
+
+    /**
+     * Remove the objects unreachable from every branch.
+     * @param dryRun only report what would be removed
+     */
+    public static void gc(boolean dryRun) {
+        GarbageCollector.collect(dryRun);
+    }
+
+    /** Convert the objects of a repository made by an older gitlet. */
+    public static void migrate() {
+        Migration.migrate();
+    }
+
+    /**
+     * Print the value of the setting KEY, or set it to VALUE when one is given.
+     * @param key setting name, only core.compression is known
+     * @param value new value, or null
+     */
+    public static void config(String key, String value) {
+        if (!key.equals(Codec.SETTING)) {
+            throw error("Unknown setting %s.", key);
+        }
+        if (value == null) {
+            System.out.println(Codec.configured().getName());
+            return;
+        }
+        Codec.forName(value);
+        Config.set(key, value);
     }
 
     public static void showStatus() {
         BranchManager.showBranches();
         BufferManager.showFiles();
-        showModified();
-        showUntracked();
+        List<String> workingFiles = WorkingTree.files();
+        TreeMap<String, String> trackedFiles = BranchManager.getHeadCommit().getFiles();
+        TreeMap<String, String> staged = BufferManager.getStaged();
+        TreeSet<String> removed = BufferManager.getRemoved();
+        showModified(trackedFiles, staged, removed);
+        showUntracked(workingFiles, trackedFiles, staged, removed);
+        StatCache.save();
     }
 
     public static void merge(String branchName) {
@@ -235,63 +478,28 @@ public class Repository {
         checkMergeCommitCondition(branchName, splitCommit, mergingCommit, currentCommit);
         HashSet<String> checkoutFiles = new HashSet<>();
         boolean encounterConflict = false;
-        TreeMap<String, String> filesInSplit = splitCommit.getFiles();
-        TreeMap<String, String> filesInMerging = mergingCommit.getFiles();
-        TreeMap<String, String> filesInHead = currentCommit.getFiles();
-        for (String fileInSplit : filesInSplit.keySet()) {
-            if (!filesInHead.containsKey(fileInSplit) && !filesInMerging.containsKey(fileInSplit)) {
+        String splitTree = splitCommit.getTreeUid();
+        String headTree = currentCommit.getTreeUid();
+        String mergingTree = mergingCommit.getTreeUid();
+        TreeSet<String> changedFiles = Tree.diff(splitTree, headTree);
+        changedFiles.addAll(Tree.diff(splitTree, mergingTree));
+        for (String file : changedFiles) {
+            String splitUid = Tree.lookup(splitTree, file);
+            String headUid = Tree.lookup(headTree, file);
+            String mergeUid = Tree.lookup(mergingTree, file);
+            if (Objects.equals(headUid, mergeUid) || Objects.equals(mergeUid, splitUid)) {
                 continue;
             }
-            if (!filesInHead.containsKey(fileInSplit) && filesInMerging.containsKey(fileInSplit)) {
-                Blob splitBlob = getBlob(filesInSplit.get(fileInSplit));
-                Blob mergeBlob = getBlob(filesInMerging.get(fileInSplit));
-                if (!mergeBlob.getUid().equals(splitBlob.getUid())) {
-                    stageConflict(null, mergeBlob);
-                    encounterConflict = true;
-                }
-                filesInMerging.remove(fileInSplit);
-                continue;
-            }
-            if (filesInHead.containsKey(fileInSplit) && !filesInMerging.containsKey(fileInSplit)) {
-                Blob splitBlob = getBlob(filesInSplit.get(fileInSplit));
-                Blob headBlob = getBlob(filesInHead.get(fileInSplit));
-                if (!headBlob.getUid().equals(splitBlob.getUid())) {
-                    stageConflict(headBlob, null);
-                    encounterConflict = true;
+            if (Objects.equals(headUid, splitUid)) {
+                if (mergeUid == null) {
+                    remove(file);
                 } else {
-                    remove(fileInSplit);
+                    stageChange(file, mergeUid, checkoutFiles);
                 }
-                continue;
-            }
-            Blob splitBlob = getBlob(filesInSplit.get(fileInSplit));
-            Blob headBlob = getBlob(filesInHead.get(fileInSplit));
-            Blob mergeBlob = getBlob(filesInMerging.get(fileInSplit));
-            if (mergeBlob.getUid().equals(splitBlob.getUid())) {
-                filesInMerging.remove(fileInSplit);
-                continue;
-            }
-            if (headBlob.getUid().equals(splitBlob.getUid())) {
-                stageChange(fileInSplit, filesInSplit.get(fileInSplit), checkoutFiles);
-                filesInMerging.remove(fileInSplit);
-                continue;
-            }
-            if (mergeBlob.getUid().equals(headBlob.getUid())) {
-                filesInMerging.remove(fileInSplit);
+            } else if (headUid != null && mergeUid != null) {
+                encounterConflict |= stageMerged(file, splitUid, headUid, mergeUid);
             } else {
-                encounterConflict = true;
-                stageConflict(headBlob, mergeBlob);
-                filesInMerging.remove(fileInSplit);
-            }
-        }
-        for (String fileInMerging : filesInMerging.keySet()) {
-            if (!filesInHead.containsKey(fileInMerging)) {
-                stageChange(fileInMerging, filesInMerging.get(fileInMerging), checkoutFiles);
-                continue;
-            }
-            Blob headBlob = getBlob(filesInHead.get(fileInMerging));
-            Blob mergeBlob = getBlob(filesInMerging.get(fileInMerging));
-            if (!mergeBlob.getUid().equals(headBlob.getUid())) {
-                stageConflict(headBlob, mergeBlob);
+                stageConflict(file, headUid, mergeUid);
                 encounterConflict = true;
             }
         }
@@ -310,109 +518,57 @@ public class Repository {
     private static void checkMergeCommitCondition(String branchName, Commit splitCommit,
                                                  Commit mergingCommit, Commit currentCommit) {
         if (splitCommit.getUid().equals(mergingCommit.getUid())) {
-            System.out.println("Given branch is an ancestor of the current branch.");
-            System.exit(0);
+            throw error("Given branch is an ancestor of the current branch.");
         } else if (splitCommit.getUid().equals(currentCommit.getUid())) {
             checkoutBranch(branchName);
-            System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+            throw error("Current branch fast-forwarded.");
         }
     }
 
-    private static Blob getBlob(String blobUid) {
-        return readObject(join(BLOBS_DIR, blobUid), Blob.class);
-    }
-
     private static void stageChange(String file, String fileUid, HashSet<String> checkoutFiles) {
-        Blob stageBlob = readObject(join(BLOBS_DIR, fileUid), Blob.class);
-        BufferManager.addStage(stageBlob);
+        BufferManager.addStage(new Blob(file, fileUid));
         checkoutFiles.add(file);
     }
 
-    private static void stageChanged(String file, String fileUid) {
-    }
-
-    private static void stageConflict(Blob headBlob, Blob mergeBlob) {
-        String headContent;
-        String mergeContent;
-        String fileName;
-        if (headBlob == null) {
-            headContent = "";
-            mergeContent = mergeBlob.getContent();
-            fileName = mergeBlob.getFileName();
-        } else if (mergeBlob == null) {
-            headContent = headBlob.getContent();
-            mergeContent = "";
-            fileName = headBlob.getFileName();
-        } else {
-            headContent = headBlob.getContent();
-            mergeContent = mergeBlob.getContent();
-            fileName = mergeBlob.getFileName();
-        }
-        String conflictContent = constructConflictContent(headContent, mergeContent);
-        writeContents(join(CWD, fileName), conflictContent);
+    /**
+     * Merge the lines of a file changed on both sides and stage the result.
+     * @param splitUid blob at the split point, null if the file was added on both sides
+     * @return true if the file was left with conflict markers
+     */
+    private static boolean stageMerged(String fileName, String splitUid,
+                                       String headUid, String mergeUid) {
+        byte[] splitContent = splitUid == null ? new byte[0] : BlobStore.readContents(splitUid);
+        Diff3 merged = new Diff3(splitContent, BlobStore.readContents(headUid),
+                BlobStore.readContents(mergeUid));
+        writeContents(WorkingTree.create(fileName), (Object) merged.getContent());
         add(fileName);
+        return merged.isConflicted();
     }
 
-    private static String constructConflictContent(String headContent, String mergeContent) {
-        StringBuilder sb = new StringBuilder("<<<<<<< HEAD\n");
-        sb.append(headContent);
-        sb.append("=======\n");
-        sb.append(mergeContent);
-        sb.append(">>>>>>>\n");
-        return sb.toString();
+    /** Stage a file deleted on one side and changed on the other, both versions marked. */
+    private static void stageConflict(String fileName, String headUid, String mergeUid) {
+        byte[] headContent = headUid == null ? new byte[0] : BlobStore.readContents(headUid);
+        byte[] mergeContent = mergeUid == null ? new byte[0] : BlobStore.readContents(mergeUid);
+        writeContents(WorkingTree.create(fileName), "<<<<<<< HEAD\n", headContent,
+                "=======\n", mergeContent, ">>>>>>>\n");
+        add(fileName);
     }
 
     private static Commit getLatestCommonCommit(Commit currentCommit, Commit mergingCommit) {
-        HashSet<String> currentCommitSet = getCurrentBranchCommits(currentCommit);
-        Queue<Commit> commits = new LinkedList<>();
-        commits.add(mergingCommit);
-        while (!commits.isEmpty()) {
-            Commit commit = commits.poll();
-            if (currentCommitSet.contains(commit.getUid())) {
-                return commit;
-            }
-            if (!commit.getParentUid().equals(EMPTY_PARENT)) {
-                commits.add(getCommit(commit.getParentUid()));
-            }
-            if (!commit.getSecondParentUid().equals(EMPTY_PARENT)) {
-                commits.add(getCommit(commit.getSecondParentUid()));
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Retrieve all commit along the way.
-     * @param currentCommit commit
-     * @return HashSet<String>
-     */
-    private static HashSet<String> getCurrentBranchCommits(Commit currentCommit) {
-        HashSet<String> currentCommitSet = new HashSet<>();
-        while (!currentCommit.isInitialCommit()) {
-            currentCommitSet.add(currentCommit.getUid());
-            if (!currentCommit.getSecondParentUid().equals(EMPTY_PARENT)) {
-                currentCommitSet.add(currentCommit.getSecondParentUid());
-            }
-            currentCommit = getCommit(currentCommit.getParentUid());
-        }
-        currentCommitSet.add(currentCommit.getUid());
-        return currentCommitSet;
+        String splitUid = CommitGraph.mergeBase(currentCommit.getUid(), mergingCommit.getUid());
+        return splitUid == null ? null : getCommit(splitUid);
     }
 
     private static void checkMergeCondition(String branchName) {
         if (!BufferManager.stagedAreaIsEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw error("You have uncommitted changes.");
         }
         if (!BranchManager.containsBranch(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            throw error("A branch with that name does not exist.");
         }
         String currentBranch = BranchManager.getHeadBranch();
         if (currentBranch.equals(branchName)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw error("Cannot merge a branch with itself.");
         }
         checkUntrackedFiles();
     }
@@ -425,32 +581,65 @@ public class Repository {
         Commit candidate = new Commit(message, currentCommitUid, secondParentUid, staged, removed);
         BufferManager.storeTrackedFiles();
         candidate.store();
-        BranchManager.moveBranch(candidate.getUid());
+        String branch = BranchManager.getHeadBranch();
+        Journal.begin(Journal.COMMIT, candidate.getUid(), branch);
+        completeCommit(branch, candidate.getUid());
+        Journal.end();
     }
 
-    private static void release(Commit commit) {
-        TreeMap<String, String> trackedFiles = commit.getFiles();
-        for (String file : trackedFiles.keySet()) {
-            String fileUid = trackedFiles.get(file);
-            Blob blob = readObject(join(BLOBS_DIR, fileUid), Blob.class);
-            writeContents(join(CWD, file), blob.getContent());
-        }
+    /** Point BRANCH to the stored commit UID and empty the stage area. */
+    static void completeCommit(String branch, String uid) {
+        BranchManager.moveBranch(branch, uid);
+        BufferManager.clearArea();
     }
 
-    private static void clearCWD() {
-        for (String fileInCWD : Objects.requireNonNull(plainFilenamesIn(CWD))) {
-            restrictedDelete(join(CWD, fileInCWD));
+    /**
+     * Replace the working files of commit FROMUID with those of commit UID,
+     * then point BRANCH to UID, make it HEAD and empty the stage area.
+     */
+    static void completeCheckout(String branch, String uid, String fromUid) {
+        checkoutCommit(getCommit(fromUid), getCommit(uid));
+        BranchManager.moveBranch(branch, uid);
+        BranchManager.checkout(branch);
+        BufferManager.clearArea();
+    }
+
+    /**
+     * Make the working files match TARGET, touching only the paths whose content differs.
+     * Files tracked by FROM or staged that TARGET lacks are deleted, and the
+     * others are compared through the stat cache, so an unchanged file is neither read
+     * nor written. Differing files are streamed from the object store on worker threads.
+     * @param from the commit the working files were checked out from
+     */
+    private static void checkoutCommit(Commit from, Commit target) {
+        TreeMap<String, String> targetFiles = target.getFiles();
+        TreeSet<String> paths = new TreeSet<>(from.getFiles().keySet());
+        paths.addAll(BufferManager.getStaged().keySet());
+        paths.addAll(targetFiles.keySet());
+        List<String> toWrite = new ArrayList<>();
+        for (String path : paths) {
+            String targetUid = targetFiles.get(path);
+            String currentUid = StatCache.hash(path);
+            if (targetUid == null) {
+                if (currentUid != null) {
+                    WorkingTree.delete(path);
+                }
+            } else if (!targetUid.equals(currentUid)) {
+                toWrite.add(path);
+            }
         }
+        Workers.map(toWrite, path -> {
+            BlobStore.release(targetFiles.get(path), WorkingTree.create(path));
+            return path;
+        });
+        StatCache.save();
     }
 
     private static void checkBranchCondition(String branchName) {
-        TreeSet<String> branches = BranchManager.getBranches();
-        if (!branches.contains(branchName)) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+        if (!BranchManager.containsBranch(branchName)) {
+            throw error("No such branch exists.");
         } else if (BranchManager.getHeadBranch().equals(branchName)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            throw error("No need to checkout the current branch.");
         }
         checkUntrackedFiles();
     }
@@ -463,7 +652,7 @@ public class Repository {
         Commit currentCommit = BranchManager.getHeadCommit();
         TreeMap<String, String> commitFiles = currentCommit.getFiles();
         TreeMap<String, String> staged = BufferManager.getStaged();
-        for (String file : Objects.requireNonNull(plainFilenamesIn(CWD))) {
+        for (String file : WorkingTree.files()) {
             if (!commitFiles.containsKey(file) && !staged.containsKey(file)) {
                 return true;
             }
@@ -473,54 +662,77 @@ public class Repository {
 
     private static void checkUntrackedFiles() {
         if (existUntrackedFiles()) {
-            System.out.println("There is an untracked file in the way; "
+            throw error("There is an untracked file in the way; "
                     + "delete it, or add and commit it first.");
-            System.exit(0);
         }
     }
 
-    private static void showModified() {
+    /**
+     * Print the tracked or staged files whose working copy is deleted or differs,
+     * only hashing the files whose stat data changed since they were last hashed.
+     */
+    private static void showModified(TreeMap<String, String> tracked,
+                                     TreeMap<String, String> staged, TreeSet<String> removed) {
+        TreeMap<String, String> modified = new TreeMap<>();
+        for (Map.Entry<String, String> file : staged.entrySet()) {
+            checkModified(file.getKey(), file.getValue(), modified);
+        }
+        for (Map.Entry<String, String> file : tracked.entrySet()) {
+            if (!staged.containsKey(file.getKey()) && !removed.contains(file.getKey())) {
+                checkModified(file.getKey(), file.getValue(), modified);
+            }
+        }
         System.out.println("=== Modifications Not Staged For Commit ===");
+        for (Map.Entry<String, String> file : modified.entrySet()) {
+            System.out.println(file.getKey() + " (" + file.getValue() + ")");
+        }
         System.out.println();
     }
 
-    private static void showUntracked() {
+    private static void checkModified(String fileName, String uid,
+                                      TreeMap<String, String> modified) {
+        String current = StatCache.hash(fileName);
+        if (current == null) {
+            modified.put(fileName, "deleted");
+        } else if (!uid.equals(current)) {
+            modified.put(fileName, "modified");
+        }
+    }
+
+    /** Print the working files that are neither staged nor tracked, or staged for removal. */
+    private static void showUntracked(List<String> workingFiles, TreeMap<String, String> tracked,
+                                      TreeMap<String, String> staged, TreeSet<String> removed) {
         System.out.println("=== Untracked Files ===");
+        for (String file : workingFiles) {
+            if (removed.contains(file)
+                    || !staged.containsKey(file) && !tracked.containsKey(file)) {
+                System.out.println(file);
+            }
+        }
         System.out.println();
     }
 
     private static void checkCommitCondition(String message) {
         if (message.isEmpty()) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw error("Please enter a commit message.");
         }
         if (BufferManager.stagedAreaIsEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw error("No changes added to the commit.");
         }
     }
 
     private static void checkAddCondition(String file) {
         File filePath = join(CWD, file);
         if (!filePath.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw error("File does not exist.");
         }
     }
 
-    /**
-     * Check if the current working version of the file is already committed.
-     * @param blob file tracker
-     * @return true if is Redundant
-     */
-    private static boolean isCurrentCommited(Blob blob) {
-        Commit currentCommit = BranchManager.getHeadCommit();
-        return currentCommit.getFiles().containsValue(blob.getUid());
-    }
-
     /** Construct .git directory */
     private static void createRepo() {
-        if (!COMMITS_DIR.mkdirs() || !STAGED_DIR.mkdirs()
+        if (!COMMITS_DIR.mkdirs() || !TREES_DIR.mkdirs()
+                || !STAGED_DIR.mkdirs() || !MESSAGE_INDEX_DIR.mkdirs()
+                || !TRIGRAM_INDEX_DIR.mkdirs()
                 || !REF_DIR.mkdirs() || !STATS_DIR.mkdirs()) {
             throw new RuntimeException("Could not create repositories.");
         }
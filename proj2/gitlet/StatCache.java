@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.STAT_CACHE_FILE;
+import static gitlet.Utils.*;
+
+/**
+ * Remembers the blob uid of working files together with their size,
+ * modification time and file key, so that a file is only hashed again
+ * once its stat data changed.
+ * The cache is kept in STAT_CACHE_FILE as
+ *     MAGIC(4) count(4) entries
+ * where each entry is the file name and file key as a 4-byte length followed
+ * by UTF-8 bytes, the size(8), the modification time in nanoseconds(8)
+ * and the raw 20-byte blob uid.
+ *
+ * @author PainJoker
+ */
+public class StatCache {
+    private static final int MAGIC = 0x47534331;
+    private static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Stat data of a working file and the uid its content hashed to. */
+    private static class Entry {
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private final String uid;
+
+        Entry(long size, long modified, String fileKey, String uid) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.uid = uid;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && modified == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && fileKey.equals(keyOf(attributes));
+        }
+    }
+
+    private static TreeMap<String, Entry> entries;
+
+    /** Modification time of the cache when it was loaded, in nanoseconds. */
+    private static long loadedAt;
+
+    private static boolean changed;
+
+    /**
+     * Compute the blob uid of the working file FILENAME.
+     * Safe to call from several threads; files are hashed outside the lock.
+     * @param fileName name of a file in CWD
+     * @return blob uid, or null if the file does not exist
+     */
+    public static String hash(String fileName) {
+        File file = join(CWD, fileName);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            forget(fileName);
+            return null;
+        }
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        String cached = cached(fileName, attributes, modified);
+        if (cached != null) {
+            return cached;
+        }
+        String uid = BlobStore.hash(fileName, file);
+        remember(fileName, new Entry(attributes.size(), modified, keyOf(attributes), uid));
+        return uid;
+    }
+
+    private static synchronized String cached(String fileName, BasicFileAttributes attributes,
+                                              long modified) {
+        load();
+        Entry entry = entries.get(fileName);
+        if (entry != null && entry.matches(attributes) && modified < loadedAt) {
+            return entry.uid;
+        }
+        return null;
+    }
+
+    private static synchronized void remember(String fileName, Entry entry) {
+        entries.put(fileName, entry);
+        changed = true;
+    }
+
+    private static synchronized void forget(String fileName) {
+        load();
+        if (entries.remove(fileName) != null) {
+            changed = true;
+        }
+    }
+
+    /** Forget every entry, as when the uids of the working files change meaning. */
+    public static synchronized void clear() {
+        entries = new TreeMap<>();
+        changed = false;
+        if (STAT_CACHE_FILE.exists() && !STAT_CACHE_FILE.delete()) {
+            throw new RuntimeException("Failed to clear " + STAT_CACHE_FILE);
+        }
+    }
+
+    /** Drop the entries read without saving them, so that the next access reads them again. */
+    static synchronized void forget() {
+        entries = null;
+        changed = false;
+    }
+
+    /** Write the cache back if any entry changed. */
+    public static synchronized void save() {
+        if (!changed) {
+            return;
+        }
+        File temp = FileUtils.tempFileFor(STAT_CACHE_FILE);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                writeString(out, item.getKey());
+                writeString(out, entry.fileKey);
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.write(fromHex(entry.uid));
+            }
+            out.close();
+            FileUtils.moveAtomic(temp, STAT_CACHE_FILE);
+            loadedAt = Files.getLastModifiedTime(STAT_CACHE_FILE.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        changed = false;
+    }
+
+    private static void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new TreeMap<>();
+        if (!STAT_CACHE_FILE.exists()) {
+            return;
+        }
+        try {
+            loadedAt = Files.getLastModifiedTime(STAT_CACHE_FILE.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(readContents(STAT_CACHE_FILE)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            int count = in.readInt();
+            byte[] uid = new byte[UID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                String fileName = readString(in);
+                String fileKey = readString(in);
+                long size = in.readLong();
+                long modified = in.readLong();
+                in.readFully(uid);
+                entries.put(fileName, new Entry(size, modified, fileKey, toHex(uid)));
+            }
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    private static String keyOf(BasicFileAttributes attributes) {
+        return Objects.toString(attributes.fileKey(), "");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(raw.length);
+        out.write(raw);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] raw = new byte[in.readInt()];
+        in.readFully(raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,356 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Repository.TREES_DIR;
+import static gitlet.Utils.*;
+
+/** Represents one directory level of a commit snapshot.
+ *  Entries map a name to either a blob or another tree by uid, so the
+ *  directories a commit does not change are shared with its parent.
+ *  A tree is written as
+ *      MAGIC(4) count(4) entries
+ *  where each entry is a kind byte, the name as a 4-byte length followed by
+ *  its UTF-8 bytes, and the raw 20-byte uid, in the sorted order of names.
+ *  Read trees keep their uids as ObjectIds and share their entry names with
+ *  every other read tree, so the cached versions of a directory cost little
+ *  more than what differs between them.
+ *
+ *  @author PainJoker
+ */
+public class Tree {
+    private static final int MAGIC = 0x47545231;
+    private static final int BLOB = 0;
+    private static final int TREE = 1;
+
+    /** Separator of the directory levels of a path. */
+    public static final String SEPARATOR = "/";
+
+    /** An entry of a tree. */
+    private static class Entry {
+        private final int kind;
+        private final ObjectId id;
+
+        Entry(int kind, ObjectId id) {
+            this.kind = kind;
+            this.id = id;
+        }
+
+        boolean isTree() {
+            return kind == TREE;
+        }
+
+        boolean sameAs(Entry other) {
+            return other != null && kind == other.kind && id.equals(other.id);
+        }
+    }
+
+    /** Recently read trees. */
+    private static final LruCache<ObjectId, Tree> CACHE = new LruCache<>(4096);
+
+    /** One instance of every entry name read so far. */
+    private static final Map<String, String> NAMES = new ConcurrentHashMap<>();
+
+    private final TreeMap<String, Entry> entries;
+
+    private Tree(TreeMap<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /** @return uid of the tree without entries, writing it if needed. */
+    public static String storeEmpty() {
+        return new Tree(new TreeMap<>()).store().toHex();
+    }
+
+    /**
+     * Read the tree UID, either loose or packed.
+     * @param uid tree uid
+     * @return Tree object
+     */
+    public static Tree read(String uid) {
+        return read(ObjectId.fromHex(uid));
+    }
+
+    private static Tree read(ObjectId id) {
+        Tree tree = CACHE.get(id);
+        if (tree != null) {
+            return tree;
+        }
+        tree = decode(readContents(id.toHex()));
+        CACHE.put(id, tree);
+        return tree;
+    }
+
+    /** @return the stored form of the tree UID, either loose or packed. */
+    static byte[] readContents(String uid) {
+        File treePath = join(TREES_DIR, uid);
+        byte[] contents = treePath.exists() ? Utils.readContents(treePath) : PackReader.read(uid);
+        if (contents == null) {
+            throw new IllegalArgumentException("Missing tree " + uid);
+        }
+        return contents;
+    }
+
+    /**
+     * Find the blob stored at PATH.
+     * @param rootUid uid of the root tree
+     * @param path file path, directory levels separated by SEPARATOR
+     * @return blob uid, or null if PATH is not tracked
+     */
+    public static String lookup(String rootUid, String path) {
+        Entry entry = entryAt(rootUid, path);
+        return entry == null || entry.isTree() ? null : entry.id.toHex();
+    }
+
+    /**
+     * Find the blob or tree stored at PATH.
+     * @param rootUid uid of the root tree
+     * @param path path of a file or directory, levels separated by SEPARATOR
+     * @return uid of the blob or tree, or null if there is none at PATH
+     */
+    public static String find(String rootUid, String path) {
+        Entry entry = entryAt(rootUid, path);
+        return entry == null ? null : entry.id.toHex();
+    }
+
+    private static Entry entryAt(String rootUid, String path) {
+        Tree tree = read(rootUid);
+        String[] names = path.split(SEPARATOR);
+        for (int i = 0; i < names.length; i += 1) {
+            Entry entry = tree.entries.get(names[i]);
+            if (entry == null || i == names.length - 1) {
+                return entry;
+            }
+            if (!entry.isTree()) {
+                return null;
+            }
+            tree = read(entry.id);
+        }
+        return null;
+    }
+
+    /**
+     * List every file below a tree.
+     * @param rootUid uid of the root tree
+     * @return mapping between file path and blob uid
+     */
+    public static TreeMap<String, String> flatten(String rootUid) {
+        TreeMap<String, String> files = new TreeMap<>();
+        flatten(read(rootUid), "", files);
+        return files;
+    }
+
+    private static void flatten(Tree tree, String prefix, TreeMap<String, String> files) {
+        for (Map.Entry<String, Entry> item : tree.entries.entrySet()) {
+            Entry entry = item.getValue();
+            if (entry.isTree()) {
+                flatten(read(entry.id), prefix + item.getKey() + SEPARATOR, files);
+            } else {
+                files.put(prefix + item.getKey(), entry.id.toHex());
+            }
+        }
+    }
+
+    /**
+     * Collect the uids of the tree UID and of every tree and blob below it.
+     * Trees already in TREES are skipped along with everything below them,
+     * so the directories shared by many commits are visited once.
+     */
+    public static void collect(String uid, Set<String> trees, Set<String> blobs) {
+        if (!trees.add(uid)) {
+            return;
+        }
+        for (Entry entry : read(uid).entries.values()) {
+            if (entry.isTree()) {
+                collect(entry.id.toHex(), trees, blobs);
+            } else {
+                blobs.add(entry.id.toHex());
+            }
+        }
+    }
+
+    /**
+     * Store a copy of the tree UID and of every tree below it, with each blob
+     * uid replaced by the one BLOBS maps it to.
+     * @param copies uids of the copies made so far, by the uid of their original,
+     *               so the directories shared by many commits are copied once
+     * @return uid of the copy
+     */
+    public static String rewrite(String uid, Map<String, String> blobs,
+                                 Map<String, String> copies) {
+        String copy = copies.get(uid);
+        if (copy != null) {
+            return copy;
+        }
+        TreeMap<String, Entry> rewritten = new TreeMap<>();
+        for (Map.Entry<String, Entry> item : read(uid).entries.entrySet()) {
+            Entry entry = item.getValue();
+            String id = entry.id.toHex();
+            String newId = entry.isTree() ? rewrite(id, blobs, copies) : blobs.get(id);
+            rewritten.put(item.getKey(), new Entry(entry.kind, ObjectId.fromHex(newId)));
+        }
+        copy = new Tree(rewritten).store().toHex();
+        copies.put(uid, copy);
+        return copy;
+    }
+
+    /**
+     * Apply CHANGES to a tree, writing only the trees along the changed paths.
+     * @param rootUid uid of the root tree to start from
+     * @param changes mapping between file path and its new blob uid, null to remove it
+     * @return uid of the new root tree
+     */
+    public static String update(String rootUid, Map<String, String> changes) {
+        return update(ObjectId.fromHex(rootUid), changes).toHex();
+    }
+
+    private static ObjectId update(ObjectId rootId, Map<String, String> changes) {
+        TreeMap<String, Entry> updated = new TreeMap<>(read(rootId).entries);
+        TreeMap<String, TreeMap<String, String>> nested = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int split = path.indexOf(SEPARATOR);
+            if (split < 0) {
+                if (change.getValue() == null) {
+                    updated.remove(path);
+                } else {
+                    updated.put(path, new Entry(BLOB, ObjectId.fromHex(change.getValue())));
+                }
+            } else {
+                nested.computeIfAbsent(path.substring(0, split), k -> new TreeMap<>())
+                        .put(path.substring(split + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> child : nested.entrySet()) {
+            Entry old = updated.get(child.getKey());
+            ObjectId childId = old != null && old.isTree()
+                    ? old.id : new Tree(new TreeMap<>()).store();
+            ObjectId newChildId = update(childId, child.getValue());
+            if (read(newChildId).entries.isEmpty()) {
+                updated.remove(child.getKey());
+            } else {
+                updated.put(child.getKey(), new Entry(TREE, newChildId));
+            }
+        }
+        return new Tree(updated).store();
+    }
+
+    /**
+     * Collect the paths whose blobs differ between two trees.
+     * Subtrees with equal uids are skipped without being read.
+     * @param oldUid uid of one tree, may be null for an empty tree
+     * @param newUid uid of the other tree, may be null for an empty tree
+     * @return the differing paths, sorted
+     */
+    public static TreeSet<String> diff(String oldUid, String newUid) {
+        return new TreeSet<>(changes(oldUid, newUid).keySet());
+    }
+
+    /**
+     * Collect the files whose blobs differ between two trees, with their new blobs.
+     * Subtrees with equal uids are skipped without being read, so the cost
+     * follows the size of the change rather than the size of the trees.
+     * @param oldUid uid of one tree, may be null for an empty tree
+     * @param newUid uid of the other tree, may be null for an empty tree
+     * @return mapping between differing path and its blob uid in NEWUID,
+     *         null if it is no file there
+     */
+    public static TreeMap<String, String> changes(String oldUid, String newUid) {
+        TreeMap<String, String> changed = new TreeMap<>();
+        changes(oldUid == null ? null : ObjectId.fromHex(oldUid),
+                newUid == null ? null : ObjectId.fromHex(newUid), "", changed);
+        return changed;
+    }
+
+    private static void changes(ObjectId oldId, ObjectId newId, String prefix,
+                                Map<String, String> changed) {
+        if (oldId != null && oldId.equals(newId)) {
+            return;
+        }
+        TreeMap<String, Entry> oldEntries = oldId == null ? new TreeMap<>() : read(oldId).entries;
+        TreeMap<String, Entry> newEntries = newId == null ? new TreeMap<>() : read(newId).entries;
+        TreeSet<String> names = new TreeSet<>(oldEntries.keySet());
+        names.addAll(newEntries.keySet());
+        for (String name : names) {
+            Entry oldEntry = oldEntries.get(name);
+            Entry newEntry = newEntries.get(name);
+            if (oldEntry != null && oldEntry.sameAs(newEntry)) {
+                continue;
+            }
+            String path = prefix + name;
+            ObjectId oldTree = oldEntry != null && oldEntry.isTree() ? oldEntry.id : null;
+            ObjectId newTree = newEntry != null && newEntry.isTree() ? newEntry.id : null;
+            if (oldTree != null || newTree != null) {
+                changes(oldTree, newTree, path + SEPARATOR, changed);
+            }
+            if (newEntry != null && !newEntry.isTree()) {
+                changed.put(path, newEntry.id.toHex());
+            } else if (oldEntry != null && !oldEntry.isTree()) {
+                changed.put(path, null);
+            }
+        }
+    }
+
+    /** Write this tree unless it is already stored. @return its uid */
+    private ObjectId store() {
+        byte[] contents = encode();
+        String uid = sha1(contents);
+        File treePath = join(TREES_DIR, uid);
+        if (!treePath.exists() && !PackReader.contains(uid)) {
+            FileUtils.writeAtomic(treePath, (Object) contents);
+        }
+        ObjectId id = ObjectId.fromHex(uid);
+        CACHE.put(id, this);
+        return id;
+    }
+
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                byte[] name = item.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(item.getValue().kind);
+                out.writeInt(name.length);
+                out.write(name);
+                item.getValue().id.write(out);
+            }
+        } catch (IOException e) {
+            throw error("Internal error encoding tree.");
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Tree decode(byte[] contents) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a gitlet tree.");
+            }
+            int count = in.readInt();
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            for (int i = 0; i < count; i += 1) {
+                int kind = in.readByte();
+                byte[] raw = new byte[in.readInt()];
+                in.readFully(raw);
+                String name = new String(raw, StandardCharsets.UTF_8);
+                entries.put(NAMES.computeIfAbsent(name, k -> k),
+                        new Entry(kind, ObjectId.read(in)));
+            }
+            return new Tree(entries);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats the changes between two versions of a file as a unified diff,
+ * with CONTEXT unchanged lines around each hunk.
+ *
+ * @author PainJoker
+ */
+public class UnifiedDiff {
+    private static final int CONTEXT = 3;
+    private static final char SAME = ' ';
+    private static final char DELETE = '-';
+    private static final char INSERT = '+';
+
+    /**
+     * Describe the change of the file PATH.
+     * @param oldContent content before, null if the file was added
+     * @param newContent content after, null if the file was deleted
+     * @return the diff, its bytes being the lines of the contents as they are
+     */
+    public static byte[] format(String path, byte[] oldContent, byte[] newContent) {
+        String name = new String(path.getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.ISO_8859_1);
+        StringBuilder out = new StringBuilder();
+        out.append("diff --gitlet a/").append(name).append(" b/").append(name).append('\n');
+        if (isBinary(oldContent) || isBinary(newContent)) {
+            out.append("Binary files ").append(oldContent == null ? "/dev/null" : "a/" + name)
+                    .append(" and ").append(newContent == null ? "/dev/null" : "b/" + name)
+                    .append(" differ\n");
+            return out.toString().getBytes(StandardCharsets.ISO_8859_1);
+        }
+        out.append("--- ").append(oldContent == null ? "/dev/null" : "a/" + name).append('\n');
+        out.append("+++ ").append(newContent == null ? "/dev/null" : "b/" + name).append('\n');
+        String[] a = Diff.lines(oldContent == null ? new byte[0] : oldContent);
+        String[] b = Diff.lines(newContent == null ? new byte[0] : newContent);
+        appendHunks(out, a, b, Diff.match(a, b));
+        return out.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void appendHunks(StringBuilder out, String[] a, String[] b, int[] matches) {
+        int size = a.length + b.length;
+        char[] kinds = new char[size];
+        String[] lines = new String[size];
+        int[] oldPos = new int[size + 1];
+        int[] newPos = new int[size + 1];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i <= a.length; i += 1) {
+            int target = i < a.length ? matches[i] : b.length;
+            if (i < a.length && target < 0) {
+                kinds[count] = DELETE;
+                lines[count] = a[i];
+                count = advance(count, oldPos, newPos, 1, 0);
+                continue;
+            }
+            while (j < target) {
+                kinds[count] = INSERT;
+                lines[count] = b[j];
+                count = advance(count, oldPos, newPos, 0, 1);
+                j += 1;
+            }
+            if (i < a.length) {
+                kinds[count] = SAME;
+                lines[count] = a[i];
+                count = advance(count, oldPos, newPos, 1, 1);
+                j += 1;
+            }
+        }
+        int k = 0;
+        while (k < count) {
+            if (kinds[k] == SAME) {
+                k += 1;
+                continue;
+            }
+            int start = Math.max(0, k - CONTEXT);
+            int end = k;
+            int sameRun = 0;
+            while (end < count && sameRun <= 2 * CONTEXT) {
+                sameRun = kinds[end] == SAME ? sameRun + 1 : 0;
+                end += 1;
+            }
+            end -= Math.max(0, sameRun - CONTEXT);
+            appendHunk(out, kinds, lines, oldPos, newPos, start, end);
+            k = end;
+        }
+    }
+
+    private static int advance(int count, int[] oldPos, int[] newPos, int oldStep, int newStep) {
+        oldPos[count + 1] = oldPos[count] + oldStep;
+        newPos[count + 1] = newPos[count] + newStep;
+        return count + 1;
+    }
+
+    private static void appendHunk(StringBuilder out, char[] kinds, String[] lines,
+                                   int[] oldPos, int[] newPos, int start, int end) {
+        int oldCount = oldPos[end] - oldPos[start];
+        int newCount = newPos[end] - newPos[start];
+        out.append("@@ -").append(range(oldPos[start], oldCount))
+                .append(" +").append(range(newPos[start], newCount)).append(" @@\n");
+        for (int k = start; k < end; k += 1) {
+            out.append(kinds[k]).append(lines[k]);
+            if (!lines[k].endsWith("\n")) {
+                out.append("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** @return a hunk range starting after line BEFORE, in the usual 1-based notation. */
+    private static String range(int before, int count) {
+        if (count == 1) {
+            return Integer.toString(before + 1);
+        }
+        return (count == 0 ? before : before + 1) + "," + count;
+    }
+
+    private static boolean isBinary(byte[] content) {
+        if (content == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(content.length, 8000); i += 1) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
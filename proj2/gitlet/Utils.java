@@ -63,6 +63,26 @@ public class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the lower-case hexadecimal numeral of the bytes in RAW. */
+    static String toHex(byte[] raw) {
+        StringBuilder result = new StringBuilder(2 * raw.length);
+        for (byte b : raw) {
+            result.append(Character.forDigit((b >>> 4) & 0x0f, 16));
+            result.append(Character.forDigit(b & 0x0f, 16));
+        }
+        return result.toString();
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, which
+     *  must have an even number of digits. */
+    static byte[] fromHex(String hex) {
+        byte[] raw = new byte[hex.length() / 2];
+        for (int i = 0; i < raw.length; i += 1) {
+            raw[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return raw;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -0,0 +1,54 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Runs independent file operations on a bounded pool of worker threads.
+ *
+ * @author PainJoker
+ */
+public class Workers {
+    /** Upper bound on the number of worker threads. */
+    private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Apply TASK to every item of ITEMS in parallel.
+     * @return the results, in the order of ITEMS
+     */
+    public static <T, R> List<R> map(List<T> items, Function<T, R> task) {
+        List<R> results = new ArrayList<>(items.size());
+        if (items.size() <= 1) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(MAX_THREADS, items.size()));
+        try {
+            List<Future<R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(pool.submit(() -> task.apply(item)));
+            }
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/**
+ * The working files of the repository, in every directory below CWD.
+ * Directories are listed in parallel, each by a task of a fork-join pool
+ * forking one task per subdirectory, so a deep or wide tree is scanned by
+ * every core; the paths found are then sorted as one array.
+ * Paths are relative to CWD, their levels separated by Tree.SEPARATOR.
+ * The .gitlet directory is never listed, nor are the paths matched by a
+ * line of IGNORE_FILE in CWD. Such a line is a glob: one holding no "/" is
+ * matched against the name of every file and directory, others against
+ * the whole path from CWD. A trailing "/" only matches directories, "#"
+ * starts a comment, and the files below an ignored directory are ignored.
+ *
+ * @author PainJoker
+ */
+public class WorkingTree {
+    /** Name of the file listing the paths to ignore, in CWD. */
+    public static final String IGNORE_FILE = ".gitletignore";
+
+    /** A line of IGNORE_FILE. */
+    private static class Pattern {
+        private final PathMatcher matcher;
+        private final boolean anchored;
+        private final boolean directoryOnly;
+
+        Pattern(String line) {
+            directoryOnly = line.endsWith("/");
+            String glob = directoryOnly ? line.substring(0, line.length() - 1) : line;
+            if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            anchored = glob.contains("/") || line.startsWith("/");
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        }
+
+        boolean matches(String path, String name, boolean directory) {
+            return (directory || !directoryOnly)
+                    && matcher.matches(Path.of(anchored ? path : name));
+        }
+    }
+
+    /** Lists one directory and forks a scan of each of its subdirectories. */
+    private static class Scan extends RecursiveTask<List<String>> {
+        private final Path root;
+        private final String dir;
+        private final List<Pattern> ignored;
+
+        Scan(Path root, String dir, List<Pattern> ignored) {
+            this.root = root;
+            this.dir = dir;
+            this.ignored = ignored;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> files = new ArrayList<>();
+            List<Scan> subdirs = new ArrayList<>();
+            Path gitletDir = GITLET_DIR.toPath().toAbsolutePath().normalize();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(root.resolve(dir))) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    String path = dir.isEmpty() ? name : dir + Tree.SEPARATOR + name;
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!entry.equals(gitletDir) && !isIgnored(ignored, path, name, true)) {
+                            subdirs.add(new Scan(root, path, ignored));
+                        }
+                    } else if (Files.isRegularFile(entry)
+                            && !isIgnored(ignored, path, name, false)) {
+                        files.add(path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            for (Scan subdir : invokeAll(subdirs)) {
+                files.addAll(subdir.join());
+            }
+            return files;
+        }
+    }
+
+    /** @return every working file, sorted. */
+    public static List<String> files() {
+        return files("");
+    }
+
+    /**
+     * List the working files below a directory.
+     * @param dir path of the directory relative to CWD, "" for CWD itself
+     * @return paths of the files, sorted
+     */
+    public static List<String> files(String dir) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        String[] files = ForkJoinPool.commonPool()
+                .invoke(new Scan(root, dir, readIgnored()))
+                .toArray(new String[0]);
+        Arrays.parallelSort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * @return the working file PATH, after creating the directories
+     *         it lies in if they are missing.
+     */
+    public static File create(String path) {
+        File file = join(CWD, path);
+        File parent = file.getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        return file;
+    }
+
+    /** Delete the working file PATH if present, then the directories it leaves empty. */
+    public static void delete(String path) {
+        File file = join(CWD, path);
+        if (file.exists() && !file.delete()) {
+            throw new RuntimeException("Failed to delete " + path);
+        }
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    private static boolean isIgnored(List<Pattern> ignored, String path, String name,
+                                     boolean directory) {
+        for (Pattern pattern : ignored) {
+            if (pattern.matches(path, name, directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Pattern> readIgnored() {
+        List<Pattern> ignored = new ArrayList<>();
+        File ignoreFile = join(CWD, IGNORE_FILE);
+        if (!ignoreFile.isFile()) {
+            return ignored;
+        }
+        for (String line : readContentsAsString(ignoreFile).split("\n")) {
+            line = line.strip();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                ignored.add(new Pattern(line));
+            }
+        }
+        return ignored;
+    }
+}